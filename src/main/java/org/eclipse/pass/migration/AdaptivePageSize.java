@@ -0,0 +1,91 @@
+package org.eclipse.pass.migration;
+
+/**
+ * Chooses the number of documents to request per page of search results. The
+ * page grows while responses are fast and shrinks when responses are slow or
+ * the connection is reset, for example by a proxy which limits the size of a
+ * response. This finds the largest page which can be retrieved reliably instead
+ * of relying on a fixed guess.
+ *
+ * Safe to share between threads.
+ */
+public class AdaptivePageSize {
+    // Factor to grow by after a fast response
+    private static final double GROWTH = 1.5;
+
+    // Responses faster than this fraction of the target latency are fast
+    private static final double FAST_FRACTION = 0.5;
+
+    private final int min_size;
+    private final int max_size;
+    private final long target_latency_ms;
+    private int size;
+
+    // Largest size which has been reset, growth stops below it
+    private int ceiling;
+
+    /**
+     * @param initial_size
+     * @param min_size
+     * @param max_size
+     * @param target_latency_ms responses slower than this shrink the page
+     */
+    public AdaptivePageSize(int initial_size, int min_size, int max_size, long target_latency_ms) {
+        if (min_size < 1 || min_size > max_size) {
+            throw new IllegalArgumentException("Invalid page size bounds: " + min_size + " to " + max_size);
+        }
+
+        this.min_size = min_size;
+        this.max_size = max_size;
+        this.target_latency_ms = target_latency_ms;
+        this.ceiling = max_size;
+        this.size = clamp(initial_size);
+    }
+
+    /**
+     * @return number of documents to request
+     */
+    public synchronized int get() {
+        return size;
+    }
+
+    /**
+     * Record a page which was retrieved successfully.
+     *
+     * @param requested size of the page which was requested
+     * @param latency_ms time taken to retrieve the page
+     */
+    public synchronized void success(int requested, long latency_ms) {
+        if (latency_ms > target_latency_ms) {
+            // Shrink in proportion to how far over the target the page was
+            size = clamp(Math.min(size, (int) (requested * target_latency_ms / latency_ms)));
+        } else if (latency_ms < FAST_FRACTION * target_latency_ms && requested >= size) {
+            size = clamp(Math.min(ceiling - 1, (int) (requested * GROWTH)));
+        }
+    }
+
+    /**
+     * Record a page whose retrieval was reset.
+     *
+     * @param requested size of the page which was requested
+     * @return whether a smaller page can be requested
+     */
+    public synchronized boolean reset(int requested) {
+        ceiling = Math.max(min_size + 1, Math.min(ceiling, requested));
+        size = clamp(Math.min(size, requested / 2));
+
+        return size < requested;
+    }
+
+    /**
+     * Forget the sizes which were reset, for example after switching to a
+     * different protocol.
+     */
+    public synchronized void clearResets() {
+        ceiling = max_size;
+    }
+
+    private int clamp(int value) {
+        return Math.max(min_size, Math.min(max_size, value));
+    }
+}
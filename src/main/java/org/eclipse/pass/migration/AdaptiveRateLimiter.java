@@ -0,0 +1,99 @@
+package org.eclipse.pass.migration;
+
+/**
+ * Paces requests to a remote service based on the latency and errors it
+ * reports. The delay between requests shrinks while responses are fast and
+ * grows when the service slows down or pushes back. This lets a client run at
+ * whatever rate the service can sustain instead of a fixed rate.
+ *
+ * Safe to share between threads. Each caller of {@link #acquire()} is given its
+ * own slot so concurrent callers are spaced by the current delay.
+ */
+public class AdaptiveRateLimiter {
+    // Weight given to the newest latency sample
+    private static final double LATENCY_ALPHA = 0.3;
+
+    // Latency above this multiple of the baseline is considered a slow down
+    private static final double SLOW_FACTOR = 2.0;
+
+    // Smallest delay to use after an error
+    private static final long MIN_ERROR_DELAY_MS = 1000;
+
+    private final long max_delay_ms;
+    private long delay_ms;
+    private double latency_ms = -1;
+    private double baseline_ms = -1;
+    private long next_request_ms;
+
+    /**
+     * @param max_delay_ms upper bound on the delay between requests
+     */
+    public AdaptiveRateLimiter(long max_delay_ms) {
+        this.max_delay_ms = max_delay_ms;
+    }
+
+    /**
+     * Block until the next request may be made.
+     *
+     * @throws InterruptedException
+     */
+    public void acquire() throws InterruptedException {
+        long wait;
+
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            long start = Math.max(now, next_request_ms);
+
+            wait = start - now;
+            next_request_ms = start + delay_ms;
+        }
+
+        if (wait > 0) {
+            Thread.sleep(wait);
+        }
+    }
+
+    /**
+     * Record a successful request.
+     *
+     * @param request_latency_ms time taken by the request
+     */
+    public synchronized void success(long request_latency_ms) {
+        if (latency_ms < 0) {
+            latency_ms = request_latency_ms;
+        } else {
+            latency_ms = LATENCY_ALPHA * request_latency_ms + (1 - LATENCY_ALPHA) * latency_ms;
+        }
+
+        if (baseline_ms < 0 || latency_ms < baseline_ms) {
+            baseline_ms = latency_ms;
+        }
+
+        if (latency_ms > SLOW_FACTOR * baseline_ms) {
+            // Service is slowing down, back off by a fraction of its latency
+            set_delay(delay_ms + (long) (latency_ms / 2));
+        } else {
+            set_delay(delay_ms / 2);
+        }
+    }
+
+    /**
+     * Record a request which failed or was rejected because the service is
+     * overloaded.
+     */
+    public synchronized void failure() {
+        set_delay(Math.max(MIN_ERROR_DELAY_MS, delay_ms * 2));
+        next_request_ms = Math.max(next_request_ms, System.currentTimeMillis() + delay_ms);
+    }
+
+    /**
+     * @return current delay between requests in milliseconds
+     */
+    public synchronized long getDelay() {
+        return delay_ms;
+    }
+
+    private void set_delay(long value) {
+        delay_ms = Math.min(max_delay_ms, value);
+    }
+}
@@ -0,0 +1,235 @@
+package org.eclipse.pass.migration;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+
+/**
+ * Binaries of a package along with a sidecar index recording the size, digest
+ * and HTTP validators of each binary. The digest is computed while the binary
+ * is written. The index lets an export skip binaries which are already in the
+ * package and have not changed.
+ *
+ * The index is append only with one JSON object per line. Later entries for a
+ * path replace earlier ones. When the store is closed, a manifest of the
+ * digests is also written.
+ */
+public class BinaryStore implements Closeable {
+    private static final String INDEX_FILE = "files-index.ndjson";
+
+    /**
+     * Index entry for a binary.
+     */
+    public static class Entry {
+        public final String path;
+        public final long size;
+        public final String sha256;
+        public final String etag;
+        public final String lastModified;
+
+        public Entry(String path, long size, String sha256, String etag, String lastModified) {
+            this.path = path;
+            this.size = size;
+            this.sha256 = sha256;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        private JsonObject toJson() {
+            JsonObjectBuilder result = Json.createObjectBuilder().add("path", path).add("size", size).add("sha256",
+                    sha256);
+
+            if (etag != null) {
+                result.add("etag", etag);
+            }
+
+            if (lastModified != null) {
+                result.add("lastModified", lastModified);
+            }
+
+            return result.build();
+        }
+
+        private static Entry fromJson(JsonObject o) {
+            return new Entry(o.getString("path"), o.getJsonNumber("size").longValue(), o.getString("sha256"),
+                    o.getString("etag", null), o.getString("lastModified", null));
+        }
+    }
+
+    private final Path package_dir;
+    private final Map<String, Entry> entries;
+    private final Writer index_out;
+
+    private BinaryStore(Path package_dir, Map<String, Entry> entries) throws IOException {
+        this.package_dir = package_dir;
+        this.entries = new ConcurrentHashMap<>(entries);
+        this.index_out = Files.newBufferedWriter(package_dir.resolve(INDEX_FILE), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Open the binary store of a package for writing. Binaries left partially
+     * written by an interrupted export are deleted and so is a partially
+     * written last line of the index, so new entries start on a line of their
+     * own.
+     *
+     * @param package_dir
+     * @return store
+     * @throws IOException
+     */
+    public static BinaryStore open(Path package_dir) throws IOException {
+        PackageUtil.deletePartialFiles(package_dir);
+        truncate_partial_line(package_dir.resolve(INDEX_FILE));
+
+        return new BinaryStore(package_dir, readIndex(package_dir));
+    }
+
+    // Truncate a file after its last line break
+    private static void truncate_partial_line(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.allocate(8 * 1024);
+            long end = channel.size();
+
+            while (end > 0) {
+                long start = Math.max(0, end - buf.capacity());
+
+                buf.clear().limit((int) (end - start));
+
+                while (buf.hasRemaining()) {
+                    if (channel.read(buf, start + buf.position()) == -1) {
+                        throw new IOException("Index ended while reading: " + file);
+                    }
+                }
+
+                for (int i = buf.limit() - 1; i >= 0; i--) {
+                    if (buf.get(i) == '\n') {
+                        channel.truncate(start + i + 1);
+                        return;
+                    }
+                }
+
+                end = start;
+            }
+
+            channel.truncate(0);
+        }
+    }
+
+    /**
+     * Read the index of a package. Only lines which were completely written are
+     * used.
+     *
+     * @param package_dir
+     * @return map from binary path to entry, empty if there is no index
+     * @throws IOException
+     */
+    public static Map<String, Entry> readIndex(Path package_dir) throws IOException {
+        Map<String, Entry> result = new HashMap<>();
+        Path file = package_dir.resolve(INDEX_FILE);
+
+        if (!Files.isRegularFile(file)) {
+            return result;
+        }
+
+        String s = Files.readString(file, StandardCharsets.UTF_8);
+        int end = s.lastIndexOf('\n');
+
+        if (end != -1) {
+            s.substring(0, end).lines().forEach(line -> {
+                Entry e = Entry.fromJson(Json.createReader(new StringReader(line)).readObject());
+                result.put(e.path, e);
+            });
+        }
+
+        return result;
+    }
+
+    /**
+     * @param path
+     * @return entry for path or null
+     */
+    public Entry get(String path) {
+        return entries.get(path);
+    }
+
+    /**
+     * Cheap check that the binary of an entry is present with the recorded size.
+     *
+     * @param entry
+     * @return whether binary is complete
+     * @throws IOException
+     */
+    public boolean isComplete(Entry entry) throws IOException {
+        Path file = PackageUtil.getFile(package_dir, entry.path);
+
+        return Files.isRegularFile(file) && Files.size(file) == entry.size;
+    }
+
+    /**
+     * Check that the binary of an entry is present and matches the recorded
+     * digest. The binary is read in full.
+     *
+     * @param entry
+     * @return whether binary is verified
+     * @throws IOException
+     */
+    public boolean verify(Entry entry) throws IOException {
+        return isComplete(entry)
+                && PackageUtil.digestFile(PackageUtil.getFile(package_dir, entry.path)).equals(entry.sha256);
+    }
+
+    /**
+     * Write a binary to the package and record it in the index.
+     *
+     * @param path
+     * @param is
+     * @param etag HTTP ETag of binary or null
+     * @param lastModified HTTP Last-Modified of binary or null
+     * @return entry
+     * @throws IOException
+     */
+    public Entry write(String path, InputStream is, String etag, String lastModified) throws IOException {
+        String sha256 = PackageUtil.writeFile(package_dir, path, is);
+        long size = Files.size(PackageUtil.getFile(package_dir, path));
+        Entry entry = new Entry(path, size, sha256, etag, lastModified);
+
+        synchronized (index_out) {
+            index_out.write(entry.toJson().toString());
+            index_out.write('\n');
+            index_out.flush();
+        }
+
+        entries.put(path, entry);
+
+        return entry;
+    }
+
+    /**
+     * Close the index and write the manifest of all binaries in the index, see
+     * {@link Manifest}.
+     */
+    @Override
+    public void close() throws IOException {
+        index_out.close();
+        Manifest.write(package_dir, entries.values());
+    }
+}
@@ -0,0 +1,31 @@
+package org.eclipse.pass.migration;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.eclipse.pass.support.client.PassClient;
+
+/**
+ * Uploads binaries to PASS.
+ */
+public interface BinaryUploader {
+    /**
+     * @param name file name of binary
+     * @param file binary to upload, may be in a zip package
+     * @return URI of the uploaded binary
+     * @throws IOException
+     */
+    URI upload(String name, Path file) throws IOException;
+
+    /**
+     * Upload through the PASS client which requires the whole binary in memory.
+     *
+     * @param client
+     * @return uploader
+     */
+    static BinaryUploader of(PassClient client) {
+        return (name, file) -> client.uploadBinary(name, Files.readAllBytes(file));
+    }
+}
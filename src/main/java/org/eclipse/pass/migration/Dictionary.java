@@ -0,0 +1,105 @@
+package org.eclipse.pass.migration;
+
+import java.util.Arrays;
+
+/**
+ * Maps strings to dense int codes, starting at 0, in the order they are first
+ * encoded. Each string is held once in an array indexed by code. Lookups go
+ * through an open addressing table of codes, so no object is allocated for an
+ * entry.
+ *
+ * Not safe for use by multiple threads.
+ */
+class Dictionary {
+    private String[] strings = new String[16];
+
+    // Code + 1 of the string in each slot, 0 for an empty slot
+    private int[] table = new int[32];
+    private int size;
+
+    /**
+     * @param s
+     * @return code of the string, added if not already present
+     */
+    int encode(String s) {
+        int slot = find_slot(s);
+
+        if (table[slot] != 0) {
+            return table[slot] - 1;
+        }
+
+        if (size == strings.length) {
+            strings = Arrays.copyOf(strings, size * 2);
+        }
+
+        strings[size] = s;
+        table[slot] = ++size;
+
+        if (size * 2 > table.length) {
+            rehash();
+        }
+
+        return size - 1;
+    }
+
+    /**
+     * @param s
+     * @return code of the string or -1 if not present
+     */
+    int find(String s) {
+        return table[find_slot(s)] - 1;
+    }
+
+    /**
+     * @param code
+     * @return string with the code
+     */
+    String decode(int code) {
+        if (code < 0 || code >= size) {
+            throw new IllegalArgumentException("Unknown code: " + code);
+        }
+
+        return strings[code];
+    }
+
+    /**
+     * @return number of strings, one more than the largest code
+     */
+    int size() {
+        return size;
+    }
+
+    private static int hash(String s) {
+        int h = s.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int find_slot(String s) {
+        int mask = table.length - 1;
+        int slot = hash(s) & mask;
+
+        while (table[slot] != 0 && !strings[table[slot] - 1].equals(s)) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    private void rehash() {
+        int[] old = table;
+        table = new int[old.length * 2];
+        int mask = table.length - 1;
+
+        for (int code : old) {
+            if (code != 0) {
+                int slot = hash(strings[code - 1]) & mask;
+
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+
+                table[slot] = code;
+            }
+        }
+    }
+}
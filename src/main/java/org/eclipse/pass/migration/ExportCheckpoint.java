@@ -0,0 +1,191 @@
+package org.eclipse.pass.migration;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonValue;
+
+/**
+ * Records the progress of an export in the package directory so an interrupted
+ * export can be continued.
+ *
+ * The checkpoint file holds the committed length of the objects file and the
+ * last sort value of each slice of the index. It is replaced atomically after
+ * every page. Binaries already in the package are tracked by the
+ * {@link BinaryStore}.
+ */
+public class ExportCheckpoint {
+    private static final String CHECKPOINT_FILE = "export-checkpoint.json";
+
+    /**
+     * A disjoint range of the index which is exported independently.
+     */
+    public static class Slice {
+        public final int index;
+        public final JsonObject query;
+        public JsonValue last;
+        public int total = -1;
+        public int count = 0;
+        public boolean done = false;
+
+        public Slice(int index, JsonObject query) {
+            this.index = index;
+            this.query = query;
+        }
+
+        public String name() {
+            return "Slice " + index;
+        }
+    }
+
+    private final Path package_dir;
+    private final List<Slice> slices;
+    private final int total;
+    private long objects_offset;
+    private boolean complete;
+
+    private ExportCheckpoint(Path package_dir, List<Slice> slices, int total) {
+        this.package_dir = package_dir;
+        this.slices = slices;
+        this.total = total;
+    }
+
+    /**
+     * Start a new checkpoint, discarding any previous one.
+     *
+     * @param package_dir
+     * @param slices
+     * @param total number of objects in the index
+     * @return checkpoint
+     * @throws IOException
+     */
+    public static ExportCheckpoint create(Path package_dir, List<Slice> slices, int total) throws IOException {
+        ExportCheckpoint result = new ExportCheckpoint(package_dir, slices, total);
+        result.commit(0);
+
+        return result;
+    }
+
+    /**
+     * @param package_dir
+     * @return checkpoint in package or null if there is none
+     * @throws IOException
+     */
+    public static ExportCheckpoint load(Path package_dir) throws IOException {
+        Path file = package_dir.resolve(CHECKPOINT_FILE);
+
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        JsonObject json;
+
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+                JsonReader json_in = Json.createReader(in)) {
+            json = json_in.readObject();
+        }
+
+        List<Slice> slices = new ArrayList<>();
+
+        json.getJsonArray("slices").forEach(v -> {
+            JsonObject o = v.asJsonObject();
+            Slice slice = new Slice(slices.size(), o.getJsonObject("query"));
+
+            slice.last = o.get("last") == JsonValue.NULL ? null : o.get("last");
+            slice.total = o.getInt("total");
+            slice.count = o.getInt("count");
+            slice.done = o.getBoolean("done");
+
+            slices.add(slice);
+        });
+
+        ExportCheckpoint result = new ExportCheckpoint(package_dir, slices, json.getInt("total"));
+        result.objects_offset = json.getJsonNumber("objectsOffset").longValue();
+        result.complete = json.getBoolean("complete");
+
+        return result;
+    }
+
+    public List<Slice> getSlices() {
+        return slices;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * @return length of the objects file which has been committed
+     */
+    public long getObjectsOffset() {
+        return objects_offset;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Atomically replace the checkpoint with the current state of the slices.
+     * Callers must not modify slices concurrently.
+     *
+     * @param objects_offset length of the objects file which has been written
+     * @throws IOException
+     */
+    public synchronized void commit(long objects_offset) throws IOException {
+        this.objects_offset = objects_offset;
+        save();
+    }
+
+    /**
+     * Mark the export as complete.
+     *
+     * @throws IOException
+     */
+    public synchronized void complete() throws IOException {
+        this.complete = true;
+        save();
+    }
+
+    private void save() throws IOException {
+        JsonArrayBuilder slices_json = Json.createArrayBuilder();
+
+        slices.forEach(s -> {
+            slices_json.add(Json.createObjectBuilder().add("query", s.query)
+                    .add("last", s.last == null ? JsonValue.NULL : s.last).add("total", s.total)
+                    .add("count", s.count).add("done", s.done));
+        });
+
+        JsonObject json = Json.createObjectBuilder().add("objectsOffset", objects_offset).add("total", total)
+                .add("complete", complete).add("slices", slices_json).build();
+
+        Path file = package_dir.resolve(CHECKPOINT_FILE);
+        Path tmp = package_dir.resolve(CHECKPOINT_FILE + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = StandardCharsets.UTF_8.encode(json.toString());
+
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+
+            channel.force(true);
+        }
+
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,209 @@
+package org.eclipse.pass.migration;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+
+/**
+ * Throughput, latency and error metrics of an export. The metrics are safe to
+ * update from any thread. They can be reported periodically to stderr and
+ * written as a JSON summary at the end of an export.
+ */
+public class ExportMetrics {
+    private static final String SUMMARY_FILE = "export-metrics.json";
+
+    /**
+     * Latency histogram with buckets growing exponentially by 10 percent.
+     * Percentiles are reported as the upper bound of their bucket.
+     */
+    public static class Histogram {
+        private static final double GROWTH = 1.1;
+        private static final int BUCKETS = 200;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+
+        private static int bucket(long value_ms) {
+            if (value_ms <= 1) {
+                return 0;
+            }
+
+            return (int) Math.min(BUCKETS - 1, Math.ceil(Math.log(value_ms) / Math.log(GROWTH)));
+        }
+
+        private static long upper_bound(int bucket) {
+            return (long) Math.ceil(Math.pow(GROWTH, bucket));
+        }
+
+        public void record(long value_ms) {
+            counts.incrementAndGet(bucket(value_ms));
+            count.increment();
+            sum.add(value_ms);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * @param p percentile between 0 and 1
+         * @return approximate value at percentile in ms or 0 if nothing recorded
+         */
+        public long getPercentile(double p) {
+            long total = 0;
+
+            for (int i = 0; i < BUCKETS; i++) {
+                total += counts.get(i);
+            }
+
+            long rank = (long) Math.ceil(p * total);
+            long seen = 0;
+
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts.get(i);
+
+                if (seen >= rank && seen > 0) {
+                    return upper_bound(i);
+                }
+            }
+
+            return 0;
+        }
+
+        private JsonObject toJson() {
+            long n = getCount();
+
+            return Json.createObjectBuilder().add("count", n).add("mean", n == 0 ? 0 : sum.sum() / n)
+                    .add("p50", getPercentile(0.5)).add("p95", getPercentile(0.95))
+                    .add("p99", getPercentile(0.99)).build();
+        }
+
+        @Override
+        public String toString() {
+            return getPercentile(0.5) + "/" + getPercentile(0.95) + "/" + getPercentile(0.99) + " ms";
+        }
+    }
+
+    public final LongAdder objects = new LongAdder();
+    public final LongAdder objectBytes = new LongAdder();
+    public final LongAdder binaries = new LongAdder();
+    public final LongAdder binariesSkipped = new LongAdder();
+    public final LongAdder binaryBytes = new LongAdder();
+    public final LongAdder esErrors = new LongAdder();
+    public final LongAdder binaryErrors = new LongAdder();
+    public final LongAdder binariesFailed = new LongAdder();
+    public final AtomicInteger esInFlight = new AtomicInteger();
+    public final AtomicInteger binariesInFlight = new AtomicInteger();
+    public final Histogram esLatency = new Histogram();
+    public final Histogram binaryLatency = new Histogram();
+
+    private final long start_ms = System.currentTimeMillis();
+    private ScheduledExecutorService reporter;
+    private long last_report_ms = start_ms;
+    private long last_objects;
+    private long last_bytes;
+
+    private long bytes() {
+        return objectBytes.sum() + binaryBytes.sum();
+    }
+
+    private static double rate(long amount, long ms) {
+        return ms <= 0 ? 0 : amount * 1000.0 / ms;
+    }
+
+    private static String format_bytes(double bytes) {
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024);
+        }
+
+        return String.format("%.1f MB", bytes / (1024 * 1024));
+    }
+
+    /**
+     * Print a line to stderr describing progress since the last report.
+     */
+    public synchronized void report() {
+        long now = System.currentTimeMillis();
+        long elapsed = now - last_report_ms;
+        long objs = objects.sum();
+        long bytes = bytes();
+
+        System.err.println(String.format(
+                "Metrics: objects %d (%.1f/s) bytes %s (%s/s) es latency %s binary latency %s "
+                        + "in flight es %d binary %d errors es %d binary %d failed binaries %d",
+                objs, rate(objs - last_objects, elapsed), format_bytes(bytes),
+                format_bytes(rate(bytes - last_bytes, elapsed)), esLatency, binaryLatency, esInFlight.get(),
+                binariesInFlight.get(), esErrors.sum(), binaryErrors.sum(), binariesFailed.sum()));
+
+        last_report_ms = now;
+        last_objects = objs;
+        last_bytes = bytes;
+    }
+
+    /**
+     * Start reporting to stderr at a fixed interval.
+     *
+     * @param interval_seconds
+     */
+    public void startReporting(long interval_seconds) {
+        reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-reporter");
+            t.setDaemon(true);
+            return t;
+        });
+
+        reporter.scheduleAtFixedRate(this::report, interval_seconds, interval_seconds, TimeUnit.SECONDS);
+    }
+
+    public void stopReporting() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+        }
+    }
+
+    /**
+     * @return summary of the metrics over the whole export
+     */
+    public JsonObject toJson() {
+        long elapsed = System.currentTimeMillis() - start_ms;
+        JsonObjectBuilder result = Json.createObjectBuilder();
+
+        result.add("durationMs", elapsed);
+        result.add("objects", objects.sum());
+        result.add("objectsPerSecond", rate(objects.sum(), elapsed));
+        result.add("objectBytes", objectBytes.sum());
+        result.add("binaries", binaries.sum());
+        result.add("binariesSkipped", binariesSkipped.sum());
+        result.add("binaryBytes", binaryBytes.sum());
+        result.add("bytesPerSecond", rate(bytes(), elapsed));
+        result.add("esLatency", esLatency.toJson());
+        result.add("binaryLatency", binaryLatency.toJson());
+        result.add("esErrors", esErrors.sum());
+        result.add("binaryErrors", binaryErrors.sum());
+        result.add("binariesFailed", binariesFailed.sum());
+
+        return result.build();
+    }
+
+    /**
+     * Write the summary into the package.
+     *
+     * @param package_dir
+     * @throws IOException
+     */
+    public void writeSummary(Path package_dir) throws IOException {
+        Files.writeString(package_dir.resolve(SUMMARY_FILE), toJson().toString(), StandardCharsets.UTF_8);
+    }
+}
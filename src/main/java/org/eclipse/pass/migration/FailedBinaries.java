@@ -0,0 +1,156 @@
+package org.eclipse.pass.migration;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+
+/**
+ * Binaries which could not be exported after all retries. The list is kept in
+ * the package so a later export can retry them. It is replaced atomically on
+ * every change.
+ */
+public class FailedBinaries {
+    private static final String FAILED_BINARIES_FILE = "failed-binaries.json";
+
+    /**
+     * A binary which failed to export.
+     */
+    public static class Entry {
+        public final String url;
+        public final String path;
+        public final String error;
+
+        public Entry(String url, String path, String error) {
+            this.url = url;
+            this.path = path;
+            this.error = error;
+        }
+    }
+
+    private final Path package_dir;
+
+    // Map from binary path to entry
+    private final Map<String, Entry> entries;
+
+    private FailedBinaries(Path package_dir, Map<String, Entry> entries) {
+        this.package_dir = package_dir;
+        this.entries = entries;
+    }
+
+    /**
+     * @param package_dir
+     * @return location of the failed binaries list in the package
+     */
+    public static Path getFile(Path package_dir) {
+        return package_dir.resolve(FAILED_BINARIES_FILE);
+    }
+
+    /**
+     * @param package_dir
+     * @return failed binaries of the package, empty if there are none
+     * @throws IOException
+     */
+    public static FailedBinaries load(Path package_dir) throws IOException {
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        Path file = getFile(package_dir);
+
+        if (Files.isRegularFile(file)) {
+            try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+                    JsonReader json_in = Json.createReader(in)) {
+                json_in.readArray().forEach(v -> {
+                    JsonObject o = v.asJsonObject();
+                    Entry e = new Entry(o.getString("url"), o.getString("path"), o.getString("error"));
+
+                    entries.put(e.path, e);
+                });
+            }
+        }
+
+        return new FailedBinaries(package_dir, entries);
+    }
+
+    /**
+     * @return snapshot of the failed binaries
+     */
+    public synchronized List<Entry> getEntries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    public synchronized boolean contains(String path) {
+        return entries.containsKey(path);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Record a binary which failed.
+     *
+     * @param url
+     * @param path
+     * @param error
+     * @throws IOException
+     */
+    public synchronized void add(String url, String path, String error) throws IOException {
+        entries.put(path, new Entry(url, path, error == null ? "" : error));
+        save();
+    }
+
+    /**
+     * Forget a binary which has now been exported.
+     *
+     * @param path
+     * @throws IOException
+     */
+    public synchronized void remove(String path) throws IOException {
+        if (entries.remove(path) != null) {
+            save();
+        }
+    }
+
+    private void save() throws IOException {
+        Path file = getFile(package_dir);
+
+        if (entries.isEmpty()) {
+            Files.deleteIfExists(file);
+            return;
+        }
+
+        JsonArrayBuilder json = Json.createArrayBuilder();
+
+        entries.values().forEach(e -> {
+            json.add(Json.createObjectBuilder().add("url", e.url).add("path", e.path).add("error", e.error));
+        });
+
+        Path tmp = package_dir.resolve(FAILED_BINARIES_FILE + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = StandardCharsets.UTF_8.encode(json.build().toString());
+
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+
+            channel.force(true);
+        }
+
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
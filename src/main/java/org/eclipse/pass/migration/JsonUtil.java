@@ -1,33 +1,27 @@
 package org.eclipse.pass.migration;
 
 import java.lang.reflect.Method;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class JsonUtil {
-    private static final Map<String, Class<?>> json_property_type = new HashMap<>();
+    // Shared by the threads validating a package
+    private static final Map<String, Class<?>> json_property_type = new ConcurrentHashMap<>();
 
     public static Class<?> getPropertyJavaType(Class<?> klass, String key) {
-        if (json_property_type.containsKey(key)) {
-            return json_property_type.get(key);
-        }
+        return json_property_type.computeIfAbsent(key, k -> find_property_java_type(klass, k));
+    }
 
+    private static Class<?> find_property_java_type(Class<?> klass, String key) {
         String get_method = "get" + Character.toUpperCase(key.charAt(0)) + key.substring(1);
-        Class<?> type = null;
 
         for (Method m : klass.getMethods()) {
             if (m.getName().equals(get_method)) {
-                type = m.getReturnType();
-                break;
+                return m.getReturnType();
             }
         }
 
-        if (type == null) {
-            throw new RuntimeException("Could not find key " + key + " in " + klass.getName());
-        }
-
-        json_property_type.put(key, type);
-        return type;
+        throw new RuntimeException("Could not find key " + key + " in " + klass.getName());
     }
 
     public static Class<?> getPassJavaType(String type) {
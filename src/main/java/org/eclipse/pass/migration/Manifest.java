@@ -0,0 +1,104 @@
+package org.eclipse.pass.migration;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * BagIt style manifest of the SHA-256 digests of the binaries of a package.
+ * Each line of manifest-sha256.txt is a hex digest, whitespace and the path of
+ * a binary relative to the package, such as files/a/b. As in BagIt, CR, LF and
+ * % in a path are percent encoded.
+ *
+ * The manifest is written from the entries of a {@link BinaryStore}, whose
+ * digests are computed as each binary is written, so writing it does not read
+ * the binaries again.
+ */
+public class Manifest {
+    private static final String MANIFEST_FILE = "manifest-sha256.txt";
+    private static final String FILES_PREFIX = "files/";
+
+    private Manifest() {
+    }
+
+    public static Path getFile(Path package_dir) {
+        return package_dir.resolve(MANIFEST_FILE);
+    }
+
+    /**
+     * @param path path of a binary as in a File uri, may start with a /
+     * @return key of the binary in a manifest read by {@link #read(Path)}
+     */
+    public static String key(String path) {
+        return path.startsWith("/") ? path.substring(1) : path;
+    }
+
+    private static String encode(String path) {
+        return path.replace("%", "%25").replace("\r", "%0D").replace("\n", "%0A");
+    }
+
+    private static String decode(String path) {
+        return path.replace("%0D", "\r").replace("%0A", "\n").replace("%25", "%");
+    }
+
+    /**
+     * Replace the manifest of a package.
+     *
+     * @param package_dir
+     * @param entries binaries to list
+     * @throws IOException
+     */
+    public static void write(Path package_dir, Collection<BinaryStore.Entry> entries) throws IOException {
+        Path tmp = package_dir.resolve(MANIFEST_FILE + ".tmp");
+
+        try (Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (BinaryStore.Entry e : entries.stream().sorted(Comparator.comparing(e -> key(e.path))).toList()) {
+                out.write(e.sha256 + "  " + FILES_PREFIX + encode(key(e.path)) + "\n");
+            }
+        }
+
+        Files.move(tmp, getFile(package_dir), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @param package_dir
+     * @return map from key of binary to hex digest, empty if there is no manifest
+     * @throws IOException if the manifest cannot be read or is malformed
+     */
+    public static Map<String, String> read(Path package_dir) throws IOException {
+        Map<String, String> result = new HashMap<>();
+        Path file = getFile(package_dir);
+
+        if (!Files.isRegularFile(file)) {
+            return result;
+        }
+
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                String[] parts = line.split("\\s+", 2);
+
+                if (parts.length != 2 || !parts[1].startsWith(FILES_PREFIX)) {
+                    throw new IOException("Malformed manifest line: " + line);
+                }
+
+                result.put(decode(parts[1].substring(FILES_PREFIX.length())), parts[0].toLowerCase());
+            }
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,737 @@
+package org.eclipse.pass.migration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonBuilderFactory;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+import org.eclipse.pass.support.client.model.PassEntity;
+
+/**
+ * Compact in memory store of the PASS objects of a package.
+ *
+ * Each id is encoded as a dense int by a {@link Dictionary} and the properties
+ * of an object are held in arrays indexed by the code of its id. Property names
+ * and types are encoded by a second dictionary. Relations are held as int
+ * arrays of the codes of their targets, so an id is held once however many
+ * objects refer to it. Other strings are held as plain strings. While objects
+ * are added, short values which repeat, such as a status, are shared.
+ *
+ * Once all objects are added, the relations are indexed by target in a
+ * {@link RelationIndex} which is kept up to date as objects change.
+ *
+ * Objects are only materialized as JsonObjects when asked for. Properties keep
+ * the order of the object they were added from and a property which is updated
+ * keeps its position, so a materialized object is the same as one updated with
+ * a JsonObjectBuilder.
+ *
+ * Not safe for use by multiple threads, except that objects may be read by
+ * several threads while none is changed.
+ */
+class ObjectStore {
+    private static final JsonBuilderFactory builder_factory = Json.createBuilderFactory(Map.of());
+
+    private static final Set<String> non_relation_list_properties = Set.of("issns", "externalIds", "locatorIds",
+            "roles", "schemas");
+
+    // Longest string shared between objects
+    private static final int MAX_SHARED_LENGTH = 64;
+
+    // Kind of a property, held in the low bits of its key. The value of a
+    // RELATION is an int array with the code of one target.
+    static final int VALUE = 0;
+    static final int STRING = 1;
+    static final int RELATION = 2;
+    static final int RELATIONS = 3;
+
+    private static final int KIND_BITS = 2;
+    private static final int KIND_MASK = (1 << KIND_BITS) - 1;
+
+    private final Dictionary ids = new Dictionary();
+    private final Dictionary names = new Dictionary();
+
+    // Indexed by id code, type is -1 where there has never been an object and
+    // -2 - type where an object of that type was removed
+    private int[] types = new int[0];
+    private int[][] keys = new int[0][];
+    private Object[][] values = new Object[0][];
+    private int size;
+
+    // Indexed by type code, codes of the ids of objects added with that type in
+    // the order they were added. Removed objects are skipped when read.
+    private int[][] type_ids = new int[0][];
+    private int[] type_counts = new int[0];
+
+    // Indexed by type code and then name code, kind + 1 of each property seen
+    private byte[][] kinds = new byte[0][];
+    private Class<?>[] type_classes = new Class<?>[0];
+
+    // Type -> property name in added objects -> name in store
+    private final Map<String, Map<String, String>> renames = new HashMap<>();
+
+    // Values shared between objects, null once compacted
+    private Map<Object, Object> shared = new HashMap<>();
+
+    // Relations by target, null until compacted
+    private RelationIndex relation_index;
+
+    /**
+     * @param object_type class of a PASS type
+     * @param key property of the type
+     * @return RELATION or RELATIONS if the property holds relations, otherwise
+     *         VALUE
+     */
+    static int getKind(Class<?> object_type, String key) {
+        if (key.equals("id") || key.equals("type") || key.equals("context")) {
+            return VALUE;
+        }
+
+        Class<?> klass = JsonUtil.getPropertyJavaType(object_type, key);
+
+        if (PassEntity.class.isAssignableFrom(klass)) {
+            return RELATION;
+        } else if (klass == List.class && !non_relation_list_properties.contains(key)) {
+            return RELATIONS;
+        }
+
+        return VALUE;
+    }
+
+    private int get_kind(int type, int name) {
+        if (type >= kinds.length) {
+            kinds = Arrays.copyOf(kinds, names.size());
+            type_classes = Arrays.copyOf(type_classes, names.size());
+        }
+
+        if (type_classes[type] == null) {
+            type_classes[type] = JsonUtil.getPassJavaType(names.decode(type));
+            kinds[type] = new byte[0];
+        }
+
+        if (name >= kinds[type].length) {
+            kinds[type] = Arrays.copyOf(kinds[type], names.size());
+        }
+
+        if (kinds[type][name] == 0) {
+            kinds[type][name] = (byte) (getKind(type_classes[type], names.decode(name)) + 1);
+        }
+
+        return kinds[type][name] - 1;
+    }
+
+    private static String get_required(JsonObject o, String key) {
+        if (!o.containsKey(key)) {
+            throw new RuntimeException("Object missing required key " + key + ": " + o);
+        }
+
+        return o.getString(key);
+    }
+
+    private Object share(Object value) {
+        if (shared == null || (value instanceof String && ((String) value).length() > MAX_SHARED_LENGTH)) {
+            return value;
+        }
+
+        Object result = shared.putIfAbsent(value, value);
+
+        return result == null ? value : result;
+    }
+
+    // Encode a value as held for the kind of its property
+    private Object encode(int kind, JsonValue value, UnaryOperator<String> normalize_id) {
+        switch (kind) {
+        case RELATION:
+            return new int[] { ids.encode(normalize_id.apply(JsonString.class.cast(value).getString())) };
+        case RELATIONS: {
+            JsonArray array = value.asJsonArray();
+            int[] targets = new int[array.size()];
+
+            for (int i = 0; i < targets.length; i++) {
+                targets[i] = ids.encode(normalize_id.apply(JsonString.class.cast(array.get(i)).getString()));
+            }
+
+            return targets;
+        }
+        default:
+            if (value.getValueType() == JsonValue.ValueType.STRING) {
+                return share(JsonString.class.cast(value).getString());
+            }
+
+            return share(value);
+        }
+    }
+
+    private void ensure_capacity(int capacity) {
+        if (capacity <= types.length) {
+            return;
+        }
+
+        int length = Math.max(capacity, types.length + (types.length >> 1) + 16);
+        int old_length = types.length;
+
+        types = Arrays.copyOf(types, length);
+        keys = Arrays.copyOf(keys, length);
+        values = Arrays.copyOf(values, length);
+
+        Arrays.fill(types, old_length, length, -1);
+    }
+
+    /**
+     * Rename a property of the objects of a type as they are added. As with a
+     * JsonObjectBuilder, the value takes the position of a property which already
+     * has the new name and is otherwise added last.
+     *
+     * @param type
+     * @param from name of property in added objects
+     * @param to name of property in store
+     */
+    void renameOnAdd(String type, String from, String to) {
+        renames.computeIfAbsent(type, t -> new HashMap<>()).put(from, to);
+    }
+
+    // Encode a property of an object at a position of its key and value arrays
+    private void encode_property(int[] k, Object[] v, int i, int id, int type, String key, JsonValue value,
+            UnaryOperator<String> normalize_id) {
+        int name = names.encode(key);
+        int kind;
+
+        if (key.equals("id")) {
+            kind = STRING;
+            v[i] = ids.decode(id);
+        } else if (key.equals("type")) {
+            kind = STRING;
+            v[i] = names.decode(type);
+        } else {
+            kind = get_kind(type, name);
+            v[i] = encode(kind, value, normalize_id);
+
+            if (v[i] instanceof String) {
+                kind = STRING;
+            }
+        }
+
+        k[i] = (name << KIND_BITS) | kind;
+    }
+
+    /**
+     * Add an object, replacing any object with the same id.
+     *
+     * @param o object with an id and type
+     * @param normalize_id applied to the id and the targets of relations
+     * @return code of the id
+     */
+    int add(JsonObject o, UnaryOperator<String> normalize_id) {
+        String type_name = get_required(o, "type");
+        int id = ids.encode(normalize_id.apply(get_required(o, "id")));
+        int type = names.encode(type_name);
+        Map<String, String> renamed = renames.getOrDefault(type_name, Map.of());
+        int[] k = new int[o.size()];
+        Object[] v = new Object[o.size()];
+        int n = 0;
+
+        for (Map.Entry<String, JsonValue> e : o.entrySet()) {
+            if (!renamed.containsKey(e.getKey())) {
+                encode_property(k, v, n++, id, type, e.getKey(), e.getValue(), normalize_id);
+            }
+        }
+
+        for (Map.Entry<String, String> r : renamed.entrySet()) {
+            if (o.containsKey(r.getKey())) {
+                int name = names.encode(r.getValue());
+                int i = 0;
+
+                while (i < n && k[i] >>> KIND_BITS != name) {
+                    i++;
+                }
+
+                encode_property(k, v, i, id, type, r.getValue(), o.get(r.getKey()), normalize_id);
+                n = Math.max(n, i + 1);
+            }
+        }
+
+        if (n < k.length) {
+            k = Arrays.copyOf(k, n);
+            v = Arrays.copyOf(v, n);
+        }
+
+        ensure_capacity(ids.size());
+
+        if (types[id] < 0) {
+            size++;
+        } else {
+            unlink(id);
+        }
+
+        // A removed object is still in the list of its type. An id given another
+        // type may already be in the list of the new type.
+        int previous = types[id] < -1 ? -2 - types[id] : types[id];
+
+        if (previous != type && (previous == -1 || !is_type_indexed(id, type))) {
+            index_type(id, type);
+        }
+
+        types[id] = type;
+        keys[id] = k;
+        values[id] = v;
+
+        link(id);
+
+        return id;
+    }
+
+    private boolean is_type_indexed(int id, int type) {
+        if (type >= type_ids.length || type_ids[type] == null) {
+            return false;
+        }
+
+        for (int i = 0; i < type_counts[type]; i++) {
+            if (type_ids[type][i] == id) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void index_type(int id, int type) {
+        if (type >= type_ids.length) {
+            type_ids = Arrays.copyOf(type_ids, names.size());
+            type_counts = Arrays.copyOf(type_counts, names.size());
+        }
+
+        if (type_ids[type] == null) {
+            type_ids[type] = new int[16];
+        } else if (type_counts[type] == type_ids[type].length) {
+            type_ids[type] = Arrays.copyOf(type_ids[type], type_counts[type] * 2);
+        }
+
+        type_ids[type][type_counts[type]++] = id;
+    }
+
+    /**
+     * Release the memory only needed while objects are added and index the
+     * relations by target. Values of objects added afterwards are not shared.
+     */
+    void compact() {
+        shared = null;
+
+        RelationIndex.Builder builder = new RelationIndex.Builder();
+
+        ids().forEach(id -> {
+            int[] k = keys[id];
+
+            for (int i = 0; i < k.length; i++) {
+                if (is_relation(k[i])) {
+                    for (int target : (int[]) values[id][i]) {
+                        builder.add(id, k[i] >>> KIND_BITS, target);
+                    }
+                }
+            }
+        });
+
+        relation_index = builder.build(ids.size());
+    }
+
+    private static boolean is_relation(int key) {
+        int kind = key & KIND_MASK;
+
+        return kind == RELATION || kind == RELATIONS;
+    }
+
+    // Update the index for the relations of a property as it is set or removed
+    private void index_property(int id, int i, boolean add) {
+        if (relation_index == null || !is_relation(keys[id][i])) {
+            return;
+        }
+
+        int name = keys[id][i] >>> KIND_BITS;
+
+        for (int target : (int[]) values[id][i]) {
+            if (add) {
+                relation_index.add(id, name, target);
+            } else {
+                relation_index.remove(id, name, target);
+            }
+        }
+    }
+
+    private void link(int id) {
+        for (int i = 0; i < keys[id].length; i++) {
+            index_property(id, i, true);
+        }
+    }
+
+    private void unlink(int id) {
+        for (int i = 0; i < keys[id].length; i++) {
+            index_property(id, i, false);
+        }
+    }
+
+    /**
+     * @return number of objects
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return number of id codes, one more than the largest
+     */
+    int getCodeCount() {
+        return ids.size();
+    }
+
+    /**
+     * @param id code of an id
+     * @return whether there is an object with the id
+     */
+    boolean contains(int id) {
+        return id >= 0 && id < types.length && types[id] >= 0;
+    }
+
+    /**
+     * @param id
+     * @return code of the id, or -1 if neither an object nor the target of a
+     *         relation has ever had the id
+     */
+    int find(String id) {
+        return ids.find(id);
+    }
+
+    private void check(int id) {
+        if (!contains(id)) {
+            throw new IllegalArgumentException("No object with id: " + id);
+        }
+    }
+
+    /**
+     * @param id code of an id
+     * @return id
+     */
+    String getId(int id) {
+        return ids.decode(id);
+    }
+
+    /**
+     * @param id code of the id of an object
+     * @return type of object
+     */
+    String getType(int id) {
+        check(id);
+        return names.decode(types[id]);
+    }
+
+    /**
+     * @return codes of the ids of all objects in increasing order. Codes follow
+     *         the order in which ids were first seen, as an object or as the
+     *         target of a relation, so this is not the order objects were added,
+     *         see {@link #getIdsOfType(String)}.
+     */
+    IntStream ids() {
+        return IntStream.range(0, types.length).filter(i -> types[i] >= 0);
+    }
+
+    /**
+     * @param type
+     * @return codes of the ids of all objects of the type in the order they were
+     *         added
+     */
+    int[] getIdsOfType(String type) {
+        int code = names.find(type);
+
+        if (code == -1 || code >= type_ids.length || type_ids[code] == null) {
+            return new int[0];
+        }
+
+        return Arrays.stream(type_ids[code], 0, type_counts[code]).filter(i -> types[i] == code).toArray();
+    }
+
+    private int index(int id, String key) {
+        check(id);
+
+        int name = names.find(key);
+
+        if (name != -1) {
+            int[] k = keys[id];
+
+            for (int i = 0; i < k.length; i++) {
+                if (k[i] >>> KIND_BITS == name) {
+                    return i;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param id code of the id of an object
+     * @param key
+     * @return whether the object has the property
+     */
+    boolean containsKey(int id, String key) {
+        return index(id, key) != -1;
+    }
+
+    /**
+     * @param id code of the id of an object
+     * @param key
+     * @return string value of the property or target of a relation, null if the
+     *         object does not have the property
+     * @throws ClassCastException if the value is not a string
+     */
+    String getString(int id, String key) {
+        int i = index(id, key);
+
+        if (i == -1) {
+            return null;
+        }
+
+        Object v = values[id][i];
+
+        switch (keys[id][i] & KIND_MASK) {
+        case STRING:
+            return (String) v;
+        case RELATION:
+            return ids.decode(((int[]) v)[0]);
+        case RELATIONS:
+            throw new ClassCastException("Value of " + key + " is an array");
+        default:
+            return JsonString.class.cast(v).getString();
+        }
+    }
+
+    /**
+     * @param id code of the id of an object
+     * @param key
+     * @return array value of the property, null if the object does not have the
+     *         property
+     * @throws ClassCastException if the value is not an array
+     */
+    JsonArray getArray(int id, String key) {
+        int i = index(id, key);
+
+        if (i == -1) {
+            return null;
+        }
+
+        Object v = values[id][i];
+
+        switch (keys[id][i] & KIND_MASK) {
+        case RELATIONS:
+            return targets_array((int[]) v);
+        case VALUE:
+            return JsonValue.class.cast(v).asJsonArray();
+        default:
+            throw new ClassCastException("Value of " + key + " is not an array");
+        }
+    }
+
+    private void set(int id, String key, int kind, Object value) {
+        int i = index(id, key);
+
+        if (i == -1) {
+            i = keys[id].length;
+            keys[id] = Arrays.copyOf(keys[id], i + 1);
+            values[id] = Arrays.copyOf(values[id], i + 1);
+        } else {
+            index_property(id, i, false);
+        }
+
+        keys[id][i] = (names.encode(key) << KIND_BITS) | kind;
+        values[id][i] = value;
+
+        index_property(id, i, true);
+    }
+
+    /**
+     * Set a property, keeping its position if the object already has it.
+     *
+     * @param id code of the id of an object
+     * @param key
+     * @param value
+     */
+    void put(int id, String key, JsonValue value) {
+        check(id);
+
+        int kind = get_kind(types[id], names.encode(key));
+        Object v = encode(kind, value, UnaryOperator.identity());
+
+        set(id, key, v instanceof String ? STRING : kind, v);
+    }
+
+    /**
+     * Set a property to a string, keeping its position if the object already
+     * has it.
+     *
+     * @param id code of the id of an object
+     * @param key
+     * @param value
+     */
+    void put(int id, String key, String value) {
+        check(id);
+
+        if (get_kind(types[id], names.encode(key)) == RELATION) {
+            set(id, key, RELATION, new int[] { ids.encode(value) });
+        } else {
+            set(id, key, STRING, value);
+        }
+    }
+
+    /**
+     * Replace the target of a relation. If the property holds a list, each
+     * occurrence of the old target is replaced. Otherwise the property is set to
+     * the new target whatever its value. Nothing is done if the object does not
+     * have the property.
+     *
+     * @param source code of the id of an object
+     * @param key
+     * @param old_target code of id of target
+     * @param new_target code of id of target
+     */
+    void replaceTarget(int source, String key, int old_target, int new_target) {
+        int i = index(source, key);
+
+        if (i == -1) {
+            return;
+        }
+
+        int kind = keys[source][i] & KIND_MASK;
+
+        if (kind == RELATIONS) {
+            int[] targets = (int[]) values[source][i];
+
+            for (int j = 0; j < targets.length; j++) {
+                if (targets[j] == old_target) {
+                    targets[j] = new_target;
+                    reindex(source, i, old_target, new_target);
+                }
+            }
+        } else if (kind == RELATION) {
+            int[] target = (int[]) values[source][i];
+
+            reindex(source, i, target[0], new_target);
+            target[0] = new_target;
+        } else {
+            put(source, key, ids.decode(new_target));
+        }
+    }
+
+    // Move a relation of a property from one target to another in the index
+    private void reindex(int source, int i, int old_target, int new_target) {
+        if (relation_index != null) {
+            int name = keys[source][i] >>> KIND_BITS;
+
+            relation_index.remove(source, name, old_target);
+            relation_index.add(source, name, new_target);
+        }
+    }
+
+    /**
+     * @param id code of the id of an object
+     */
+    void remove(int id) {
+        check(id);
+        unlink(id);
+
+        types[id] = -2 - types[id];
+        keys[id] = null;
+        values[id] = null;
+        size--;
+    }
+
+    private RelationIndex get_relation_index() {
+        if (relation_index == null) {
+            throw new IllegalStateException("Relations are not indexed until the store is compacted");
+        }
+
+        return relation_index;
+    }
+
+    /**
+     * @param target code of an id
+     * @return whether any object has a relation with the target
+     */
+    boolean isTarget(int target) {
+        return get_relation_index().isTarget(target);
+    }
+
+    /**
+     * @param target code of an id
+     * @return relations with the target
+     */
+    List<Relation> getRelationsTo(int target) {
+        List<Relation> result = new ArrayList<>();
+        String target_id = ids.decode(target);
+
+        get_relation_index().forEach(target, (source, name) -> {
+            result.add(new Relation(ids.decode(source), names.decode(name), target_id));
+        });
+
+        return result;
+    }
+
+    private JsonArray targets_array(int[] targets) {
+        JsonArrayBuilder result = builder_factory.createArrayBuilder();
+
+        for (int target : targets) {
+            result.add(ids.decode(target));
+        }
+
+        return result.build();
+    }
+
+    /**
+     * @param id code of the id of an object
+     * @return materialized object
+     */
+    JsonObject get(int id) {
+        check(id);
+
+        JsonObjectBuilder result = builder_factory.createObjectBuilder();
+        int[] k = keys[id];
+        Object[] v = values[id];
+
+        for (int i = 0; i < k.length; i++) {
+            String name = names.decode(k[i] >>> KIND_BITS);
+
+            switch (k[i] & KIND_MASK) {
+            case STRING:
+                result.add(name, (String) v[i]);
+                break;
+            case RELATION:
+                result.add(name, ids.decode(((int[]) v[i])[0]));
+                break;
+            case RELATIONS:
+                result.add(name, targets_array((int[]) v[i]));
+                break;
+            default:
+                result.add(name, (JsonValue) v[i]);
+            }
+        }
+
+        return result.build();
+    }
+
+    /**
+     * @return all objects materialized one at a time in the order of
+     *         {@link #ids()}
+     */
+    Stream<JsonObject> objects() {
+        return ids().mapToObj(this::get);
+    }
+}
@@ -0,0 +1,345 @@
+package org.eclipse.pass.migration;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonReaderFactory;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import javax.json.stream.JsonParserFactory;
+
+/**
+ * Index of the objects file of a package giving the byte offset, length and
+ * type of each object by id. The index lets a single object or all objects of
+ * a type be read by seeking instead of parsing the whole objects file.
+ *
+ * The index is a sidecar file of tab separated lines. The first line records
+ * the size and last modified time of the objects file it was built for so a
+ * stale index can be detected. Only an uncompressed objects file in a
+ * directory package can be indexed.
+ */
+public class ObjectsIndex {
+    private static final String INDEX_FILE = "objects-index.tsv";
+    private static final String HEADER = "#objects";
+    private static final JsonParserFactory parser_factory = Json.createParserFactory(Map.of());
+    private static final JsonReaderFactory reader_factory = Json.createReaderFactory(Map.of());
+
+    /**
+     * Location of an object in the objects file.
+     */
+    public static class Entry {
+        public final String id;
+        public final String type;
+        public final long offset;
+        public final int length;
+
+        public Entry(String id, String type, long offset, int length) {
+            this.id = id;
+            this.type = type;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final Path package_dir;
+    private final Map<String, Entry> entries;
+    private final Map<String, List<Entry>> type_entries;
+
+    private ObjectsIndex(Path package_dir, List<Entry> list) {
+        this.package_dir = package_dir;
+        this.entries = new HashMap<>(list.size() * 2);
+        this.type_entries = new LinkedHashMap<>();
+
+        list.forEach(e -> {
+            entries.put(e.id, e);
+            type_entries.computeIfAbsent(e.type, t -> new ArrayList<>()).add(e);
+        });
+    }
+
+    public static Path getFile(Path package_dir) {
+        return package_dir.resolve(INDEX_FILE);
+    }
+
+    /**
+     * @param package_dir
+     * @return whether the objects file of the package can be indexed
+     */
+    public static boolean isIndexable(Path package_dir) {
+        return package_dir.getFileSystem() == FileSystems.getDefault()
+                && Files.isRegularFile(PackageUtil.getObjectsFile(package_dir));
+    }
+
+    /**
+     * @param package_dir
+     * @return index of the package or null if it is missing or stale
+     * @throws IOException
+     */
+    public static ObjectsIndex load(Path package_dir) throws IOException {
+        Path file = getFile(package_dir);
+
+        if (!isIndexable(package_dir) || !Files.isRegularFile(file)) {
+            return null;
+        }
+
+        List<Entry> list = new ArrayList<>();
+
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String header = in.readLine();
+            String expected = HEADER + "\t" + get_signature(PackageUtil.getObjectsFile(package_dir));
+
+            if (!expected.equals(header)) {
+                return null;
+            }
+
+            String line;
+
+            while ((line = in.readLine()) != null) {
+                String[] parts = line.split("\t");
+                list.add(new Entry(parts[0], parts[1], Long.parseLong(parts[2]), Integer.parseInt(parts[3])));
+            }
+        }
+
+        return new ObjectsIndex(package_dir, list);
+    }
+
+    /**
+     * Scan the objects file and write an index of it if possible.
+     *
+     * @param package_dir
+     * @return index
+     * @throws IOException
+     */
+    public static ObjectsIndex build(Path package_dir) throws IOException {
+        Path objects_file = PackageUtil.getObjectsFile(package_dir);
+
+        if (!isIndexable(package_dir)) {
+            throw new IOException("Cannot index objects file of package: " + package_dir);
+        }
+
+        List<Entry> list;
+
+        try {
+            list = ObjectsReader.mapChunks(objects_file).parallelStream().flatMap(c -> index_chunk(c).stream())
+                    .toList();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        try {
+            write(package_dir, list, Files.size(objects_file));
+        } catch (IOException e) {
+            // The index can still be used, for example from a read only package
+            System.err.println("Warning. Could not write objects index: " + e.getMessage());
+        }
+
+        return new ObjectsIndex(package_dir, list);
+    }
+
+    // Size and last modified time of an objects file separated by a tab
+    private static String get_signature(Path objects_file) throws IOException {
+        return Files.size(objects_file) + "\t" + Files.getLastModifiedTime(objects_file).toMillis();
+    }
+
+    /**
+     * Write the index of an objects file. The objects file must not be changed
+     * afterwards.
+     *
+     * @param package_dir
+     * @param list entries in file order
+     * @param objects_size size of the objects file
+     * @throws IOException
+     */
+    public static void write(Path package_dir, List<Entry> list, long objects_size) throws IOException {
+        Path file = getFile(package_dir);
+        Path tmp = package_dir.resolve(INDEX_FILE + ".tmp");
+        String signature = get_signature(PackageUtil.getObjectsFile(package_dir));
+
+        if (!signature.startsWith(objects_size + "\t")) {
+            throw new IOException("Objects file does not have the indexed size: " + objects_size);
+        }
+
+        try (Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            out.write(HEADER + "\t" + signature + "\n");
+
+            for (Entry e : list) {
+                out.write(e.id + "\t" + e.type + "\t" + e.offset + "\t" + e.length + "\n");
+            }
+        }
+
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Remove the index of a package because its objects file is changing.
+     *
+     * @param package_dir
+     * @throws IOException
+     */
+    public static void delete(Path package_dir) throws IOException {
+        Files.deleteIfExists(getFile(package_dir));
+    }
+
+    // Find the id and type of each line of a chunk
+    private static List<Entry> index_chunk(ObjectsReader.Chunk chunk) {
+        List<Entry> result = new ArrayList<>();
+        ByteBuffer bytes = chunk.bytes;
+        int limit = bytes.limit();
+        int start = 0;
+
+        for (int i = 0; i <= limit; i++) {
+            if (i == limit || bytes.get(i) == '\n') {
+                int end = i;
+
+                while (end > start && (bytes.get(end - 1) == '\r' || bytes.get(end - 1) == ' ')) {
+                    end--;
+                }
+
+                if (end > start) {
+                    byte[] line = new byte[end - start];
+                    bytes.get(start, line);
+                    result.add(index_line(new String(line, StandardCharsets.UTF_8), chunk.offset + start,
+                            line.length));
+                }
+
+                start = i + 1;
+            }
+        }
+
+        return result;
+    }
+
+    // Read the top level id and type of an object without building it
+    private static Entry index_line(String line, long offset, int length) {
+        String id = null;
+        String type = null;
+
+        try (JsonParser parser = parser_factory.createParser(new StringReader(line))) {
+            parser.next();
+
+            while (parser.next() == Event.KEY_NAME && (id == null || type == null)) {
+                String key = parser.getString();
+                Event value = parser.next();
+
+                if (value == Event.VALUE_STRING && key.equals("id")) {
+                    id = parser.getString();
+                } else if (value == Event.VALUE_STRING && key.equals("type")) {
+                    type = parser.getString();
+                } else if (value == Event.START_OBJECT) {
+                    parser.skipObject();
+                } else if (value == Event.START_ARRAY) {
+                    parser.skipArray();
+                }
+            }
+        }
+
+        if (id == null || type == null) {
+            throw new RuntimeException("Object at offset " + offset + " missing id or type");
+        }
+
+        return new Entry(id, type, offset, length);
+    }
+
+    /**
+     * @param id
+     * @return entry for id or null
+     */
+    public Entry get(String id) {
+        return entries.get(id);
+    }
+
+    /**
+     * @param type
+     * @return entries of objects of the type in file order
+     */
+    public List<Entry> getEntries(String type) {
+        return Collections.unmodifiableList(type_entries.getOrDefault(type, List.of()));
+    }
+
+    public Set<String> getTypes() {
+        return Collections.unmodifiableSet(type_entries.keySet());
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @param id
+     * @return object with id or null if there is none
+     * @throws IOException
+     */
+    public JsonObject readObject(String id) throws IOException {
+        Entry e = entries.get(id);
+
+        if (e == null) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(PackageUtil.getObjectsFile(package_dir),
+                StandardOpenOption.READ)) {
+            return read(channel, e);
+        }
+    }
+
+    /**
+     * @param type
+     * @return stream of objects of type in file order which must be closed
+     * @throws IOException
+     */
+    public Stream<JsonObject> readObjectsOfType(String type) throws IOException {
+        FileChannel channel = FileChannel.open(PackageUtil.getObjectsFile(package_dir), StandardOpenOption.READ);
+
+        return getEntries(type).stream().map(e -> {
+            try {
+                return read(channel, e);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }).onClose(() -> {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+
+    private static JsonObject read(FileChannel channel, Entry e) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(e.length);
+
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, e.offset + buf.position()) == -1) {
+                throw new IOException("Objects file ended before object: " + e.id);
+            }
+        }
+
+        buf.flip();
+        String line = StandardCharsets.UTF_8.decode(buf).toString();
+
+        try (JsonReader in = reader_factory.createReader(new StringReader(line))) {
+            return in.readObject();
+        }
+    }
+}
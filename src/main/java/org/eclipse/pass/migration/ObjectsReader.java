@@ -0,0 +1,306 @@
+package org.eclipse.pass.migration;
+
+import java.io.BufferedReader;
+import java.io.CharArrayReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonReaderFactory;
+
+/**
+ * Reads an nd json file of objects, parsing lines in parallel on the common
+ * fork-join pool.
+ *
+ * A file on the default file system is memory mapped and split into chunks at
+ * line boundaries. Other sources, such as a compressed objects file or a zip
+ * package, are read sequentially in batches of lines which are then parsed in
+ * parallel.
+ *
+ * An ordered stream returns objects in file order and is sequential, so it can
+ * be consumed like the stream of a single threaded reader. Only a bounded
+ * number of chunks are parsed ahead of the consumer. An unordered stream is
+ * parallel and its terminal operation may run concurrently on several threads.
+ */
+public class ObjectsReader {
+    private static final JsonReaderFactory reader_factory = Json.createReaderFactory(Map.of());
+
+    // Size in bytes of a chunk of a mapped file
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    // Number of lines in a batch of a sequentially read file
+    private static final int BATCH_LINES = 2000;
+
+    // Chunks parsed ahead of the consumer of an ordered stream
+    private static final int LOOKAHEAD = 2 * ForkJoinPool.getCommonPoolParallelism() + 2;
+
+    /**
+     * A part of a mapped file made up of whole lines.
+     */
+    static class Chunk {
+        // Offset of the chunk in the file
+        final long offset;
+        final ByteBuffer bytes;
+
+        Chunk(long offset, ByteBuffer bytes) {
+            this.offset = offset;
+            this.bytes = bytes;
+        }
+    }
+
+    private ObjectsReader() {
+    }
+
+    /**
+     * @param file
+     * @param ordered whether the stream must be sequential and in file order
+     * @return stream of objects
+     * @throws IOException
+     */
+    public static Stream<JsonObject> read(Path file, boolean ordered) throws IOException {
+        if (file.getFileSystem() != FileSystems.getDefault()) {
+            return read(Files.newBufferedReader(file, StandardCharsets.UTF_8));
+        }
+
+        List<Chunk> chunks = mapChunks(file);
+
+        if (ordered) {
+            Iterator<Supplier<List<JsonObject>>> parsers = chunks.stream()
+                    .<Supplier<List<JsonObject>>>map(c -> () -> parse_chunk(c.bytes)).iterator();
+
+            return ordered_stream(parsers, null);
+        }
+
+        return chunks.parallelStream().unordered().flatMap(c -> parse_chunk(c.bytes).stream());
+    }
+
+    /**
+     * Read objects from a reader. The returned stream is sequential and in order.
+     * Closing the stream closes the reader.
+     *
+     * @param in
+     * @return stream of objects
+     */
+    public static Stream<JsonObject> read(BufferedReader in) {
+        Iterator<Supplier<List<JsonObject>>> batches = new Iterator<>() {
+            private List<String> next = read_batch();
+
+            private List<String> read_batch() {
+                List<String> result = new ArrayList<>(BATCH_LINES);
+
+                try {
+                    String line;
+
+                    while (result.size() < BATCH_LINES && (line = in.readLine()) != null) {
+                        result.add(line);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+
+                return result;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return !next.isEmpty();
+            }
+
+            @Override
+            public Supplier<List<JsonObject>> next() {
+                if (next.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+
+                List<String> lines = next;
+                next = read_batch();
+
+                return () -> {
+                    List<JsonObject> result = new ArrayList<>(lines.size());
+
+                    lines.forEach(line -> {
+                        char[] chars = line.toCharArray();
+                        parse_line(chars, 0, chars.length, result);
+                    });
+
+                    return result;
+                };
+            }
+        };
+
+        return ordered_stream(batches, in);
+    }
+
+    /**
+     * Split a mapped file into chunks which end at a newline or the end of the
+     * file.
+     *
+     * @param file
+     * @return chunks in file order
+     * @throws IOException
+     */
+    static List<Chunk> mapChunks(Path file) throws IOException {
+        List<Chunk> result = new ArrayList<>();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = 0;
+
+            while (start < size) {
+                // Map a little extra so the end of a line past the chunk can be found
+                long window = Math.min(size - start, (long) CHUNK_SIZE * 2);
+                MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, start, window);
+                int end = (int) Math.min(window, CHUNK_SIZE);
+
+                while (end < window && buf.get(end - 1) != '\n') {
+                    end++;
+                }
+
+                if (end == window && start + window < size && buf.get(end - 1) != '\n') {
+                    // A line longer than the window, map until its end
+                    long line_end = find_newline(channel, start + window, size);
+                    buf = channel.map(FileChannel.MapMode.READ_ONLY, start, line_end - start);
+                    end = buf.limit();
+                }
+
+                result.add(new Chunk(start, buf.slice(0, end)));
+
+                start += end;
+            }
+        }
+
+        return result;
+    }
+
+    // Return the offset just past the next newline or the file size
+    private static long find_newline(FileChannel channel, long offset, long size) throws IOException {
+        while (offset < size) {
+            long len = Math.min(size - offset, CHUNK_SIZE);
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, offset, len);
+
+            for (int i = 0; i < len; i++) {
+                if (buf.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+
+            offset += len;
+        }
+
+        return size;
+    }
+
+    private static List<JsonObject> parse_chunk(ByteBuffer bytes) {
+        CharBuffer chars = StandardCharsets.UTF_8.decode(bytes);
+        char[] array = chars.array();
+        int limit = chars.arrayOffset() + chars.limit();
+        List<JsonObject> result = new ArrayList<>();
+
+        int line_start = chars.arrayOffset();
+
+        for (int i = line_start; i < limit; i++) {
+            if (array[i] == '\n') {
+                parse_line(array, line_start, i - line_start, result);
+                line_start = i + 1;
+            }
+        }
+
+        // Only a file without a trailing newline has text after the last one
+        if (line_start < limit) {
+            parse_line(array, line_start, limit - line_start, result);
+        }
+
+        return result;
+    }
+
+    // A blank line fails to parse as it did when read line by line
+    private static void parse_line(char[] chars, int offset, int length, List<JsonObject> result) {
+        try (JsonReader in = reader_factory.createReader(new CharArrayReader(chars, offset, length))) {
+            result.add(in.readObject());
+        }
+    }
+
+    // Parse chunks on the common pool keeping a bounded number ahead of the
+    // consumer. Closing the stream closes the source if given.
+    private static Stream<JsonObject> ordered_stream(Iterator<Supplier<List<JsonObject>>> chunks,
+            Closeable source) {
+        Iterator<List<JsonObject>> parsed = new Iterator<>() {
+            private final Deque<CompletableFuture<List<JsonObject>>> pending = new ArrayDeque<>();
+
+            private void fill() {
+                while (pending.size() < LOOKAHEAD && chunks.hasNext()) {
+                    pending.add(CompletableFuture.supplyAsync(chunks.next(), ForkJoinPool.commonPool()));
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                fill();
+                return !pending.isEmpty();
+            }
+
+            @Override
+            public List<JsonObject> next() {
+                fill();
+
+                if (pending.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+
+                try {
+                    return pending.remove().join();
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+
+                    throw e;
+                }
+            }
+        };
+
+        Stream<JsonObject> result = StreamSupport
+                .stream(Spliterators.spliteratorUnknownSize(parsed, Spliterator.ORDERED | Spliterator.NONNULL),
+                        false)
+                .flatMap(List::stream);
+
+        if (source != null) {
+            result = result.onClose(() -> {
+                try {
+                    source.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,295 @@
+package org.eclipse.pass.migration;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonReaderFactory;
+
+/**
+ * Sorts objects, by default by type, in the order the types must be imported,
+ * and then by id. The result is deterministic so two packages written from the
+ * same objects are byte for byte the same and the objects of each type are
+ * contiguous.
+ *
+ * Objects are collected into runs of a bounded size. A full run is sorted and
+ * spilled to a temporary file. The sorted objects are then produced by merging
+ * the spilled runs with the last run still in memory, so the number of objects
+ * held at once does not depend on the number sorted.
+ *
+ * Not safe for use by multiple threads.
+ */
+public class ObjectsSorter implements Closeable {
+    private static final JsonReaderFactory reader_factory = Json.createReaderFactory(Map.of());
+    private static final int DEFAULT_RUN_SIZE = 500000;
+    private static final Map<String, Integer> type_rank = new HashMap<>();
+
+    static {
+        for (String type : PackageUtil.TYPE_ORDER) {
+            type_rank.put(type, type_rank.size());
+        }
+    }
+
+    /**
+     * Order of objects by type and then id. Types which are not known come
+     * after the known types ordered by name.
+     */
+    public static final Comparator<JsonObject> ORDER = Comparator
+            .<JsonObject>comparingInt(o -> type_rank.getOrDefault(o.getString("type"), type_rank.size()))
+            .thenComparing(o -> o.getString("type")).thenComparing(o -> o.getString("id"));
+
+    /**
+     * Order of objects by id alone.
+     */
+    public static final Comparator<JsonObject> BY_ID = Comparator.comparing(o -> o.getString("id"));
+
+    /**
+     * @return run size given by the system property package.sort.run
+     */
+    public static int getRunSize() {
+        return Integer.getInteger("package.sort.run", DEFAULT_RUN_SIZE);
+    }
+
+    // A sorted run being merged with the current object at its head
+    private static class Run {
+        final Iterator<JsonObject> objects;
+        JsonObject head;
+
+        Run(Iterator<JsonObject> objects) {
+            this.objects = objects;
+        }
+
+        boolean advance() {
+            head = objects.hasNext() ? objects.next() : null;
+            return head != null;
+        }
+    }
+
+    private final Path tmp_parent;
+    private final int run_size;
+    private final Comparator<JsonObject> order;
+    private final List<JsonObject> run;
+    private final List<Path> spilled = new ArrayList<>();
+    private final List<Closeable> open = new ArrayList<>();
+    private Path tmp_dir;
+
+    /**
+     * Sort objects by {@link #ORDER}.
+     *
+     * @param tmp_parent directory in which to create temporary files
+     * @param run_size number of objects sorted in memory before spilling a run
+     */
+    public ObjectsSorter(Path tmp_parent, int run_size) {
+        this(tmp_parent, run_size, ORDER);
+    }
+
+    /**
+     * @param tmp_parent directory in which to create temporary files
+     * @param run_size number of objects sorted in memory before spilling a run
+     * @param order order of sorted objects
+     */
+    public ObjectsSorter(Path tmp_parent, int run_size, Comparator<JsonObject> order) {
+        if (run_size < 1) {
+            throw new IllegalArgumentException("Run size must be at least 1");
+        }
+
+        this.tmp_parent = tmp_parent;
+        this.run_size = run_size;
+        this.order = order;
+        this.run = new ArrayList<>(Math.min(run_size, 64 * 1024));
+    }
+
+    /**
+     * @param o object to sort, must have a type and id
+     * @throws IOException
+     */
+    public void add(JsonObject o) throws IOException {
+        run.add(o);
+
+        if (run.size() >= run_size) {
+            spill();
+        }
+    }
+
+    /**
+     * @param objects objects to sort
+     * @throws IOException
+     */
+    public void addAll(Stream<JsonObject> objects) throws IOException {
+        for (JsonObject o : (Iterable<JsonObject>) objects::iterator) {
+            add(o);
+        }
+    }
+
+    /**
+     * @return number of runs spilled to disk
+     */
+    public int getSpilledRuns() {
+        return spilled.size();
+    }
+
+    private void spill() throws IOException {
+        if (tmp_dir == null) {
+            tmp_dir = Files.createTempDirectory(tmp_parent, "objects-sort");
+        }
+
+        run.sort(order);
+
+        Path file = tmp_dir.resolve("run-" + spilled.size() + ".ndjson");
+
+        try (ObjectsWriter out = new ObjectsWriter(FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE))) {
+            for (JsonObject o : run) {
+                out.write(o);
+            }
+        }
+
+        spilled.add(file);
+        run.clear();
+    }
+
+    /**
+     * Return the sorted objects. Objects must not be added afterwards. The
+     * stream is sequential and reads the spilled runs as it is consumed, so it
+     * must be consumed before the sorter is closed.
+     *
+     * @return sorted objects
+     * @throws IOException
+     */
+    public Stream<JsonObject> sorted() throws IOException {
+        run.sort(order);
+
+        if (spilled.isEmpty()) {
+            return run.stream();
+        }
+
+        PriorityQueue<Run> heads = new PriorityQueue<>(spilled.size() + 1, (a, b) -> order.compare(a.head, b.head));
+
+        for (Path file : spilled) {
+            BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+            open.add(in);
+
+            Run r = new Run(read_run(in));
+
+            if (r.advance()) {
+                heads.add(r);
+            }
+        }
+
+        Run last = new Run(run.iterator());
+
+        if (last.advance()) {
+            heads.add(last);
+        }
+
+        Iterator<JsonObject> merged = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public JsonObject next() {
+                Run r = heads.poll();
+
+                if (r == null) {
+                    throw new NoSuchElementException();
+                }
+
+                JsonObject result = r.head;
+
+                if (r.advance()) {
+                    heads.add(r);
+                }
+
+                return result;
+            }
+        };
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merged,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    // Parse the lines of a spilled run one at a time
+    private static Iterator<JsonObject> read_run(BufferedReader in) {
+        return new Iterator<>() {
+            private String next = read_line();
+
+            private String read_line() {
+                try {
+                    return in.readLine();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public JsonObject next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+
+                JsonObject result;
+
+                try (JsonReader reader = reader_factory.createReader(new StringReader(next))) {
+                    result = reader.readObject();
+                }
+
+                next = read_line();
+
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Close spilled runs and remove the temporary files.
+     */
+    @Override
+    public void close() throws IOException {
+        for (Closeable c : open) {
+            c.close();
+        }
+
+        open.clear();
+
+        for (Path file : spilled) {
+            Files.deleteIfExists(file);
+        }
+
+        spilled.clear();
+        run.clear();
+
+        if (tmp_dir != null) {
+            Files.deleteIfExists(tmp_dir);
+            tmp_dir = null;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.eclipse.pass.migration;
+
+import java.io.CharArrayWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
+
+/**
+ * Writes objects as nd json to a channel. Each object is serialized by a
+ * generator into a reusable character buffer and encoded into a reusable byte
+ * buffer which is written to the channel when full. JSON escapes line breaks
+ * in strings so an object always serializes to a single line.
+ *
+ * Not safe for use by multiple threads.
+ */
+public class ObjectsWriter implements Closeable {
+    private static final JsonGeneratorFactory generator_factory = Json.createGeneratorFactory(Map.of());
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Exposes the characters written without copying them
+    private static class CharBufferWriter extends CharArrayWriter {
+        CharBufferWriter() {
+            super(4 * 1024);
+        }
+
+        CharBuffer contents() {
+            return CharBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    private final WritableByteChannel channel;
+    private final CharBufferWriter chars = new CharBufferWriter();
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+    // Unpaired surrogates are replaced, as by a Writer
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private long position;
+
+    /**
+     * @param channel destination, closed when the writer is closed
+     */
+    public ObjectsWriter(WritableByteChannel channel) {
+        this(channel, 0);
+    }
+
+    /**
+     * @param channel destination, closed when the writer is closed
+     * @param position number of bytes already in the destination
+     */
+    public ObjectsWriter(WritableByteChannel channel, long position) {
+        this.channel = channel;
+        this.position = position;
+    }
+
+    /**
+     * @return number of bytes written including those still buffered
+     */
+    public long position() {
+        return position;
+    }
+
+    /**
+     * Write an object as a line.
+     *
+     * @param o
+     * @return length of the line in bytes without the line terminator
+     * @throws IOException
+     */
+    public int write(JsonObject o) throws IOException {
+        chars.reset();
+
+        try (JsonGenerator gen = generator_factory.createGenerator(chars)) {
+            gen.write(o);
+        }
+
+        return write_line(chars.contents());
+    }
+
+    /**
+     * Write an object which is already serialized as a single line.
+     *
+     * @param json
+     * @return length of the line in bytes without the line terminator
+     * @throws IOException
+     */
+    public int writeLine(String json) throws IOException {
+        return write_line(CharBuffer.wrap(json));
+    }
+
+    private int write_line(CharBuffer line) throws IOException {
+        long start = position;
+
+        encoder.reset();
+
+        // Encode the line and then let the encoder write out any state it holds
+        boolean flushing = false;
+
+        for (;;) {
+            int before = bytes.position();
+            CoderResult result = flushing ? encoder.flush(bytes) : encoder.encode(line, bytes, true);
+            position += bytes.position() - before;
+
+            if (result.isOverflow()) {
+                drain();
+            } else if (!result.isUnderflow()) {
+                result.throwException();
+            } else if (flushing) {
+                break;
+            } else {
+                flushing = true;
+            }
+        }
+
+        int length = (int) (position - start);
+
+        if (!bytes.hasRemaining()) {
+            drain();
+        }
+
+        bytes.put((byte) '\n');
+        position++;
+
+        return length;
+    }
+
+    private void drain() throws IOException {
+        bytes.flip();
+
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+
+        bytes.clear();
+    }
+
+    /**
+     * Write out buffered bytes. The channel is not forced to storage.
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package org.eclipse.pass.migration;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+
+/**
+ * Computes the difference between an old and a new version of a package as a
+ * delta package. The objects file of the delta holds the objects which were
+ * added or changed in the new package. The ids and types of deleted objects are
+ * written to deleted-objects.ndjson. Only the binaries of added File objects,
+ * or whose content changed, are copied to the delta.
+ *
+ * Both packages are sorted by id with an {@link ObjectsSorter} and then merged,
+ * so memory use is bounded by the sort run size rather than the size of the
+ * packages. Objects are compared by value, so a difference in key order or
+ * whitespace is not a change.
+ *
+ * Binaries are compared by the size and digest recorded in the binary index of
+ * each package, see {@link BinaryStore}. If either package has no entry for a
+ * binary, the digests of the files are computed.
+ */
+public class PackageDiff {
+    private static final String DELETED_FILE = "deleted-objects.ndjson";
+
+    /**
+     * Counts of the differences found.
+     */
+    public static class Summary {
+        public long added;
+        public long changed;
+        public long deleted;
+        public long unchanged;
+        public long binaries;
+
+        @Override
+        public String toString() {
+            return "Added: " + added + " Changed: " + changed + " Deleted: " + deleted + " Unchanged: " + unchanged
+                    + " Binaries: " + binaries;
+        }
+    }
+
+    private final Path old_package;
+    private final Path new_package;
+    private final Path delta;
+    private final Map<String, BinaryStore.Entry> old_binaries;
+    private final Map<String, BinaryStore.Entry> new_binaries;
+    private final Summary summary = new Summary();
+
+    private PackageDiff(Path old_package, Path new_package, Path delta) throws IOException {
+        this.old_package = old_package;
+        this.new_package = new_package;
+        this.delta = delta;
+        this.old_binaries = BinaryStore.readIndex(old_package);
+        this.new_binaries = BinaryStore.readIndex(new_package);
+    }
+
+    public static Path getDeletedFile(Path packageDir) {
+        return packageDir.resolve(DELETED_FILE);
+    }
+
+    /**
+     * Write the delta between two packages to a directory.
+     *
+     * @param old_package
+     * @param new_package
+     * @param delta directory of delta package
+     * @param run_size number of objects of each package sorted in memory before
+     *            spilling a run next to the delta
+     * @return summary of differences
+     * @throws IOException
+     */
+    public static Summary write(Path old_package, Path new_package, Path delta, int run_size) throws IOException {
+        PackageUtil.initPackage(delta);
+        ObjectsIndex.delete(delta);
+
+        Path tmp_parent = delta.toAbsolutePath().getParent();
+        PackageDiff diff = new PackageDiff(old_package, new_package, delta);
+
+        try (ObjectsSorter old_sorter = new ObjectsSorter(tmp_parent, run_size, ObjectsSorter.BY_ID);
+                ObjectsSorter new_sorter = new ObjectsSorter(tmp_parent, run_size, ObjectsSorter.BY_ID)) {
+            try (Stream<JsonObject> objects = PackageUtil.readObjects(old_package)) {
+                old_sorter.addAll(objects);
+            }
+
+            try (Stream<JsonObject> objects = PackageUtil.readObjects(new_package)) {
+                new_sorter.addAll(objects);
+            }
+
+            try (ObjectsWriter out = PackageUtil.getObjectsWriter(delta);
+                    ObjectsWriter deleted = new ObjectsWriter(FileChannel.open(getDeletedFile(delta),
+                            StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                            StandardOpenOption.TRUNCATE_EXISTING))) {
+                diff.merge(old_sorter.sorted().iterator(), new_sorter.sorted().iterator(), out, deleted);
+            }
+        }
+
+        return diff.summary;
+    }
+
+    private static JsonObject next(Iterator<JsonObject> objects) {
+        return objects.hasNext() ? objects.next() : null;
+    }
+
+    // Walk both packages in id order
+    private void merge(Iterator<JsonObject> old_objects, Iterator<JsonObject> new_objects, ObjectsWriter out,
+            ObjectsWriter deleted) throws IOException {
+        JsonObject old_o = next(old_objects);
+        JsonObject new_o = next(new_objects);
+
+        while (old_o != null || new_o != null) {
+            int cmp = old_o == null ? 1
+                    : new_o == null ? -1 : old_o.getString("id").compareTo(new_o.getString("id"));
+
+            if (cmp < 0) {
+                deleted.write(Json.createObjectBuilder().add("id", old_o.getString("id"))
+                        .add("type", old_o.getString("type")).build());
+                summary.deleted++;
+                old_o = next(old_objects);
+            } else if (cmp > 0) {
+                out.write(new_o);
+                copy_binary(new_o);
+                summary.added++;
+                new_o = next(new_objects);
+            } else {
+                boolean binary_changed = binary_changed(new_o);
+
+                if (binary_changed || !old_o.equals(new_o)) {
+                    out.write(new_o);
+                    summary.changed++;
+                } else {
+                    summary.unchanged++;
+                }
+
+                // The binary of a File whose other properties changed is
+                // already in the old package
+                if (binary_changed) {
+                    copy_binary(new_o);
+                }
+
+                old_o = next(old_objects);
+                new_o = next(new_objects);
+            }
+        }
+    }
+
+    private static String get_binary_path(JsonObject o) {
+        if (o.getString("type").equals("File") && o.containsKey("uri")) {
+            return o.getString("uri");
+        }
+
+        return null;
+    }
+
+    // Whether the binary of a File object differs from the old package
+    private boolean binary_changed(JsonObject o) throws IOException {
+        String path = get_binary_path(o);
+
+        if (path == null) {
+            return false;
+        }
+
+        Path old_file = PackageUtil.getFile(old_package, path);
+        Path new_file = PackageUtil.getFile(new_package, path);
+
+        if (!Files.isRegularFile(new_file)) {
+            return false;
+        }
+
+        if (!Files.isRegularFile(old_file)) {
+            return true;
+        }
+
+        BinaryStore.Entry old_entry = old_binaries.get(path);
+        BinaryStore.Entry new_entry = new_binaries.get(path);
+
+        if (old_entry != null && new_entry != null) {
+            return old_entry.size != new_entry.size || !old_entry.sha256.equals(new_entry.sha256);
+        }
+
+        return Files.size(old_file) != Files.size(new_file)
+                || !PackageUtil.digestFile(old_file).equals(PackageUtil.digestFile(new_file));
+    }
+
+    private void copy_binary(JsonObject o) throws IOException {
+        String path = get_binary_path(o);
+
+        if (path == null) {
+            return;
+        }
+
+        Path source = PackageUtil.getFile(new_package, path);
+
+        if (!Files.isRegularFile(source)) {
+            System.err.println("Warning. Cannot find binary for File: " + o.getString("id"));
+            return;
+        }
+
+        Path target = PackageUtil.getFile(delta, path);
+
+        Files.createDirectories(target.getParent());
+        Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        summary.binaries++;
+    }
+}
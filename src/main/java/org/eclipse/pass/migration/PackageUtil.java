@@ -1,150 +1,782 @@
 package org.eclipse.pass.migration;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.PrintWriter;
-import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
-import javax.json.Json;
 import javax.json.JsonObject;
 
 /**
  * Utilities for managing a migration package.
+ *
+ * A package is either a directory or a zip file with the same layout. The
+ * objects file may be compressed with gzip. A zip package is read in place as
+ * a zip file system so the paths of an opened package work the same either way.
+ *
+ * A package may instead be partitioned by type with the objects of each type in
+ * their own objects-TYPE.ndjson file. A single objects file takes precedence if
+ * both are present.
  */
 public class PackageUtil {
+    private static final String OBJECTS_FILE = "objects.ndjson";
+    private static final String COMPRESSED_OBJECTS_FILE = OBJECTS_FILE + ".gz";
+    private static final String FILES_DIR = "files";
+    private static final String PARTIAL_FILES_DIR = "partial-files";
+    private static final String TYPE_OBJECTS_PREFIX = "objects-";
+    private static final String TYPE_OBJECTS_SUFFIX = ".ndjson";
+
+    /**
+     * PASS types in the order they are imported so that relations always point
+     * to objects which already exist.
+     */
+    public static final List<String> TYPE_ORDER = List.of("User", "Repository", "Journal", "Publisher", "Policy",
+            "Funder", "Grant", "Publication", "Submission", "RepositoryCopy", "Deposit", "SubmissionEvent", "File");
+
     private PackageUtil() {
     }
 
+    /**
+     * A package opened for reading. A zip package is opened as a file system
+     * which is closed along with the package.
+     */
+    public static class OpenPackage implements Closeable {
+        private final FileSystem zip_fs;
+        private final Path dir;
+
+        private OpenPackage(FileSystem zip_fs, Path dir) {
+            this.zip_fs = zip_fs;
+            this.dir = dir;
+        }
+
+        /**
+         * @return package directory to pass to other methods
+         */
+        public Path getDir() {
+            return dir;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (zip_fs != null) {
+                zip_fs.close();
+            }
+        }
+    }
+
+    /**
+     * @param location
+     * @return whether the package location is a zip file
+     */
+    public static boolean isZip(Path location) {
+        return location.getFileName().toString().toLowerCase().endsWith(".zip");
+    }
+
+    /**
+     * Open an existing package which may be a directory or a zip file.
+     *
+     * @param location
+     * @return opened package
+     * @throws IOException
+     */
+    public static OpenPackage open(Path location) throws IOException {
+        if (isZip(location)) {
+            FileSystem fs = FileSystems.newFileSystem(location);
+            return new OpenPackage(fs, fs.getPath("/"));
+        }
+
+        return new OpenPackage(null, location);
+    }
+
     public static void initPackage(Path packageDir) throws IOException {
         Files.createDirectories(getFilesDir(packageDir));
     }
 
+    /**
+     * @param packageDir
+     * @return whether the package has an objects file, compressed or not, or
+     *         is partitioned by type
+     * @throws IOException
+     */
+    public static boolean hasObjects(Path packageDir) throws IOException {
+        return has_single_objects_file(packageDir) || isPartitioned(packageDir);
+    }
+
+    private static boolean has_single_objects_file(Path packageDir) {
+        return Files.isRegularFile(getObjectsFile(packageDir))
+                || Files.isRegularFile(getCompressedObjectsFile(packageDir));
+    }
+
+    /**
+     * @param packageDir
+     * @return whether the objects of the package are in a file per type
+     * @throws IOException
+     */
+    public static boolean isPartitioned(Path packageDir) throws IOException {
+        return !has_single_objects_file(packageDir) && !getTypeObjectsFiles(packageDir).isEmpty();
+    }
+
+    /**
+     * @param packageDir
+     * @param type
+     * @return file holding the objects of a type in a partitioned package
+     */
+    public static Path getTypeObjectsFile(Path packageDir, String type) {
+        return packageDir.resolve(TYPE_OBJECTS_PREFIX + type + TYPE_OBJECTS_SUFFIX);
+    }
+
+    private static boolean is_type_objects_file(Path file) {
+        String name = file.getFileName() == null ? "" : file.getFileName().toString();
+
+        return name.startsWith(TYPE_OBJECTS_PREFIX) && name.endsWith(TYPE_OBJECTS_SUFFIX)
+                && name.length() > TYPE_OBJECTS_PREFIX.length() + TYPE_OBJECTS_SUFFIX.length();
+    }
+
+    private static String get_type(Path type_objects_file) {
+        String name = type_objects_file.getFileName().toString();
+
+        return name.substring(TYPE_OBJECTS_PREFIX.length(), name.length() - TYPE_OBJECTS_SUFFIX.length());
+    }
+
+    /**
+     * @param packageDir
+     * @return files of a partitioned package in import order of their types
+     *         followed by files of unknown types by name
+     * @throws IOException
+     */
+    public static List<Path> getTypeObjectsFiles(Path packageDir) throws IOException {
+        if (!Files.isDirectory(packageDir)) {
+            return List.of();
+        }
+
+        try (Stream<Path> files = Files.list(packageDir)) {
+            return files.filter(f -> is_type_objects_file(f) && Files.isRegularFile(f))
+                    .sorted(Comparator.<Path>comparingInt(f -> {
+                        int i = TYPE_ORDER.indexOf(get_type(f));
+                        return i == -1 ? TYPE_ORDER.size() : i;
+                    }).thenComparing(f -> f.getFileName().toString())).toList();
+        }
+    }
+
+    // Lines of the objects file which may be compressed or partitioned by type
+    private static Stream<JsonObject> read_objects(Path packageDir, boolean ordered) throws IOException {
+        if (Files.isRegularFile(getObjectsFile(packageDir))) {
+            return ObjectsReader.read(getObjectsFile(packageDir), ordered);
+        }
+
+        if (isPartitioned(packageDir)) {
+            List<Path> files = getTypeObjectsFiles(packageDir);
+
+            return (ordered ? files.stream() : files.parallelStream().unordered()).flatMap(f -> {
+                try {
+                    return ObjectsReader.read(f, ordered);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+
+        return ObjectsReader.read(new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(getCompressedObjectsFile(packageDir))),
+                StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * The objects are parsed in parallel, but the stream is sequential and in
+     * the order of the objects file.
+     *
+     * @param packageDir
+     * @return stream of objects which must be closed
+     * @throws IOException
+     */
     public static Stream<JsonObject> readObjects(Path packageDir) throws IOException {
-        return Files.lines(getObjectsFile(packageDir), StandardCharsets.UTF_8).map(s -> {
-            return Json.createReader(new StringReader(s)).readObject();
-        });
+        return read_objects(packageDir, true);
+    }
+
+    /**
+     * The returned stream is parallel so its terminal operation may run on
+     * several threads at once.
+     *
+     * @param packageDir
+     * @return stream of objects in no particular order which must be closed
+     * @throws IOException
+     */
+    public static Stream<JsonObject> readObjectsUnordered(Path packageDir) throws IOException {
+        return read_objects(packageDir, false);
     }
 
     public static Path getObjectsFile(Path packageDir) {
-        return packageDir.resolve("objects.ndjson");
+        return packageDir.resolve(OBJECTS_FILE);
+    }
+
+    public static Path getCompressedObjectsFile(Path packageDir) {
+        return packageDir.resolve(COMPRESSED_OBJECTS_FILE);
     }
 
     public static Path getFilesDir(Path packageDir) {
-        return packageDir.resolve("files");
+        return packageDir.resolve(FILES_DIR);
     }
 
-    public static PrintWriter getObjectsWriter(Path packageDir) throws IOException {
-        return new PrintWriter(Files.newBufferedWriter(getObjectsFile(packageDir), StandardCharsets.UTF_8));
+    /**
+     * @param packageDir
+     * @return directory of binaries being written, which is not part of the
+     *         package
+     */
+    public static Path getPartialFilesDir(Path packageDir) {
+        return packageDir.resolve(PARTIAL_FILES_DIR);
+    }
+
+    /**
+     * Delete binaries left partially written, for example by an interrupted
+     * export. No binary may be being written.
+     *
+     * @param packageDir
+     * @throws IOException
+     */
+    public static void deletePartialFiles(Path packageDir) throws IOException {
+        Path dir = getPartialFilesDir(packageDir);
+
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+
+        Files.delete(dir);
+    }
+
+    /**
+     * Open a writer which replaces the objects file of a package. The objects
+     * file is compressed with gzip if the package.gzip system property is true.
+     * An existing objects file in the other format is removed.
+     *
+     * @param packageDir
+     * @return writer
+     * @throws IOException
+     */
+    public static ObjectsWriter getObjectsWriter(Path packageDir) throws IOException {
+        if (Boolean.getBoolean("package.gzip")) {
+            Files.deleteIfExists(getObjectsFile(packageDir));
+
+            return new ObjectsWriter(Channels.newChannel(
+                    new GZIPOutputStream(Files.newOutputStream(getCompressedObjectsFile(packageDir)), 64 * 1024)));
+        }
+
+        Files.deleteIfExists(getCompressedObjectsFile(packageDir));
+
+        return new ObjectsWriter(FileChannel.open(getObjectsFile(packageDir), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
     }
 
-    public static void writeObjects(PrintWriter out, Stream<JsonObject> objects) throws IOException {
-        objects.map(o -> o.toString().replaceAll("\r|\n", "")).forEach(out::println);
+    /**
+     * Open the objects file for writing after the given offset. Anything past the
+     * offset is discarded.
+     *
+     * @param packageDir
+     * @param offset length of objects file to keep
+     * @return channel positioned at offset
+     * @throws IOException
+     */
+    public static FileChannel getObjectsChannel(Path packageDir, long offset) throws IOException {
+        FileChannel channel = FileChannel.open(getObjectsFile(packageDir), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+
+        if (channel.size() < offset) {
+            channel.close();
+            throw new IOException("Objects file is shorter than offset " + offset);
+        }
+
+        channel.truncate(offset);
+        channel.position(offset);
+
+        return channel;
+    }
+
+    /**
+     * @param channel objects file channel positioned where writing starts
+     * @return writer which closes the channel when it is closed
+     * @throws IOException
+     */
+    public static ObjectsWriter getObjectsWriter(FileChannel channel) throws IOException {
+        return new ObjectsWriter(channel, channel.position());
+    }
+
+    /**
+     * Write objects and flush the writer.
+     *
+     * @param out
+     * @param objects
+     * @throws IOException
+     */
+    public static void writeObjects(ObjectsWriter out, Stream<JsonObject> objects) throws IOException {
+        for (JsonObject o : (Iterable<JsonObject>) objects::iterator) {
+            out.write(o);
+        }
+
         out.flush();
     }
 
+    /**
+     * Replace the objects of a package. If the system property
+     * package.partition is true, the objects are written to a file per type.
+     * Otherwise an uncompressed objects file is indexed as it is written, see
+     * {@link ObjectsIndex}. Objects in the other layout are removed once the
+     * objects are written.
+     *
+     * @param packageDir
+     * @param objects
+     * @throws IOException
+     */
     public static void writeObjects(Path packageDir, Stream<JsonObject> objects) throws IOException {
-        try (PrintWriter out = PackageUtil.getObjectsWriter(packageDir)) {
-            PackageUtil.writeObjects(out, objects);
+        ObjectsIndex.delete(packageDir);
+
+        if (Boolean.getBoolean("package.partition")) {
+            write_partitioned(packageDir, objects);
+            return;
+        }
+
+        write_single(packageDir, objects);
+
+        for (Path file : getTypeObjectsFiles(packageDir)) {
+            Files.delete(file);
         }
     }
 
-    public static void writeFile(Path packageDir, String path, InputStream is) throws IOException {
-        if (path.startsWith("/")) {
-            path = path.substring(1);
+    private static void write_single(Path packageDir, Stream<JsonObject> objects) throws IOException {
+        try (ObjectsWriter out = getObjectsWriter(packageDir)) {
+            if (Boolean.getBoolean("package.gzip") || packageDir.getFileSystem() != FileSystems.getDefault()) {
+                writeObjects(out, objects);
+                return;
+            }
+
+            List<ObjectsIndex.Entry> index = new ArrayList<>();
+
+            for (JsonObject o : (Iterable<JsonObject>) objects::iterator) {
+                long offset = out.position();
+                int length = out.write(o);
+
+                index.add(new ObjectsIndex.Entry(o.getString("id"), o.getString("type"), offset, length));
+            }
+
+            out.flush();
+            ObjectsIndex.write(packageDir, index, out.position());
         }
+    }
 
-        Path full_path = getFilesDir(packageDir).resolve(path);
-        Files.createDirectories(full_path.getParent());
+    // Write a file per type, then remove the single objects file and files of
+    // types which are no longer present. Return the number of objects.
+    private static long write_partitioned(Path packageDir, Stream<JsonObject> objects) throws IOException {
+        Map<String, ObjectsWriter> writers = new HashMap<>();
+        long count = 0;
+
+        try {
+            for (JsonObject o : (Iterable<JsonObject>) objects::iterator) {
+                String type = o.getString("type");
+                ObjectsWriter out = writers.get(type);
 
-        try (OutputStream os = Files.newOutputStream(full_path)) {
-            is.transferTo(os);
+                if (out == null) {
+                    out = new ObjectsWriter(FileChannel.open(getTypeObjectsFile(packageDir, type),
+                            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+                    writers.put(type, out);
+                }
+
+                out.write(o);
+                count++;
+            }
+        } finally {
+            for (ObjectsWriter out : writers.values()) {
+                out.close();
+            }
+        }
+
+        Files.deleteIfExists(getObjectsFile(packageDir));
+        Files.deleteIfExists(getCompressedObjectsFile(packageDir));
+
+        for (Path file : getTypeObjectsFiles(packageDir)) {
+            if (!writers.containsKey(get_type(file))) {
+                Files.delete(file);
+            }
         }
+
+        return count;
     }
 
-    public static byte[] readFileFully(Path packageDir, String path) throws IOException {
-        if (path.startsWith("/")) {
-            path = path.substring(1);
+    /**
+     * Convert a package directory to the layout with a file per type. Nothing
+     * is done if it is already partitioned.
+     *
+     * @param packageDir
+     * @return number of objects written
+     * @throws IOException
+     */
+    public static long partitionObjects(Path packageDir) throws IOException {
+        if (isPartitioned(packageDir)) {
+            return 0;
+        }
+
+        try (Stream<JsonObject> objects = readObjects(packageDir)) {
+            ObjectsIndex.delete(packageDir);
+            return write_partitioned(packageDir, objects);
+        }
+    }
+
+    /**
+     * Get the index of the objects file of a package, building it if it is
+     * missing or stale.
+     *
+     * @param packageDir
+     * @return index or null if the objects file cannot be indexed
+     * @throws IOException
+     */
+    public static ObjectsIndex getObjectsIndex(Path packageDir) throws IOException {
+        if (!ObjectsIndex.isIndexable(packageDir)) {
+            return null;
         }
 
-        Path full_path = getFilesDir(packageDir).resolve(path);
+        ObjectsIndex result = ObjectsIndex.load(packageDir);
 
-        return Files.readAllBytes(full_path);
+        return result == null ? ObjectsIndex.build(packageDir) : result;
     }
 
-    private static void check(Path packageDir, JsonObject o) {
-        o.keySet().forEach(k -> {
-            if (k.startsWith("@")) {
-                throw new RuntimeException("Key started with @ in object: " + o);
-            }
-        });
+    /**
+     * Read a single object. The objects file is only scanned if it cannot be
+     * indexed.
+     *
+     * @param packageDir
+     * @param id
+     * @return object or null if there is none with the id
+     * @throws IOException
+     */
+    public static JsonObject readObject(Path packageDir, String id) throws IOException {
+        ObjectsIndex index = getObjectsIndex(packageDir);
 
-        if (!o.containsKey("id")) {
-            throw new RuntimeException("Missing required key id: " + o);
+        if (index != null) {
+            return index.readObject(id);
         }
 
-        if (!o.containsKey("type")) {
-            throw new RuntimeException("Missing required key type: " + o);
+        try (Stream<JsonObject> s = readObjects(packageDir)) {
+            return s.filter(o -> o.getString("id").equals(id)).findFirst().orElse(null);
         }
+    }
 
-        if (o.getString("type").equals("File")) {
-            if (!o.containsKey("uri")) {
-                System.err.println("Warning. No uri for File: " + o);
-                return;
+    /**
+     * Read the objects of a type in file order. Only the file of the type is read
+     * in a partitioned package. Otherwise the objects file is only scanned if it
+     * cannot be indexed.
+     *
+     * @param packageDir
+     * @param type
+     * @return stream of objects which must be closed
+     * @throws IOException
+     */
+    public static Stream<JsonObject> readObjectsOfType(Path packageDir, String type) throws IOException {
+        if (isPartitioned(packageDir)) {
+            Path file = getTypeObjectsFile(packageDir, type);
+
+            return Files.isRegularFile(file) ? ObjectsReader.read(file, true) : Stream.empty();
+        }
+
+        ObjectsIndex index = getObjectsIndex(packageDir);
+
+        if (index != null) {
+            return readObjectsOfType(index, type);
+        }
+
+        return readObjects(packageDir).filter(o -> o.getString("type").equals(type));
+    }
+
+    /**
+     * Read the objects of a type in file order using an index already loaded,
+     * see {@link #getObjectsIndex(Path)}, so reading each type in turn does not
+     * load the index each time.
+     *
+     * @param index
+     * @param type
+     * @return stream of objects which must be closed
+     * @throws IOException
+     */
+    public static Stream<JsonObject> readObjectsOfType(ObjectsIndex index, String type) throws IOException {
+        return index.readObjectsOfType(type);
+    }
+
+    /**
+     * @param packageDir
+     * @param path path of binary, may start with a /
+     * @return location of binary in package
+     */
+    public static Path getFile(Path packageDir, String path) {
+        if (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+
+        return getFilesDir(packageDir).resolve(path);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 not supported", e);
+        }
+    }
+
+    /**
+     * Write a binary to the package. The binary is written to a temporary file
+     * outside the files directory, see {@link #getPartialFilesDir(Path)}, which
+     * is then moved into place so a partially written binary is never visible.
+     * The digest is computed as the binary is written.
+     *
+     * @param packageDir
+     * @param path
+     * @param is
+     * @return hex encoded SHA-256 digest of binary
+     * @throws IOException
+     */
+    public static String writeFile(Path packageDir, String path, InputStream is) throws IOException {
+        Path full_path = getFile(packageDir, path);
+        Files.createDirectories(full_path.getParent());
+
+        MessageDigest digest = sha256();
+
+        if (full_path.getFileSystem() != FileSystems.getDefault()) {
+            // Zip entries are only visible once the zip is closed
+            try (OutputStream os = Files.newOutputStream(full_path)) {
+                new DigestInputStream(is, digest).transferTo(os);
             }
+        } else {
+            Path tmp_dir = Files.createDirectories(getPartialFilesDir(packageDir));
+            Path tmp_path = Files.createTempFile(tmp_dir, "binary", ".part");
 
-            String relative_path = o.getString("uri").substring(1);
-            Path file_path = getFilesDir(packageDir).resolve(relative_path);
+            try {
+                try (OutputStream os = Files.newOutputStream(tmp_path)) {
+                    new DigestInputStream(is, digest).transferTo(os);
+                }
 
-            if (!Files.isRegularFile(file_path)) {
-                throw new RuntimeException("Cannot find binary for File: " + o);
+                Files.move(tmp_path, full_path, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp_path);
             }
         }
 
+        return HexFormat.of().formatHex(digest.digest());
     }
 
     /**
-     * Run consistency checks on the package such as making sure. That File objects
-     * match binaries and all relations
+     * @param file
+     * @return hex encoded SHA-256 digest of file
+     * @throws IOException
+     */
+    public static String digestFile(Path file) throws IOException {
+        MessageDigest digest = sha256();
+
+        try (InputStream is = new DigestInputStream(Files.newInputStream(file), digest)) {
+            is.transferTo(OutputStream.nullOutputStream());
+        }
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public static byte[] readFileFully(Path packageDir, String path) throws IOException {
+        return Files.readAllBytes(getFile(packageDir, path));
+    }
+
+    // The objects file, its index or a file of objects of a type
+    private static boolean is_objects_file(Path packageDir, Path file) {
+        return file.equals(getObjectsFile(packageDir)) || file.equals(getCompressedObjectsFile(packageDir))
+                || file.equals(ObjectsIndex.getFile(packageDir))
+                || (file.getParent() != null && file.getParent().equals(packageDir) && is_type_objects_file(file));
+    }
+
+    // Regular files of a package other than the objects file and partially
+    // written binaries in a stable order
+    private static List<Path> list_other_files(Path packageDir) throws IOException {
+        Path partial_dir = getPartialFilesDir(packageDir);
+
+        try (Stream<Path> files = Files.walk(packageDir)) {
+            return files.filter(Files::isRegularFile).filter(f -> !is_objects_file(packageDir, f))
+                    .filter(f -> !f.startsWith(partial_dir)).sorted().toList();
+        }
+    }
+
+    /**
+     * Copy everything in a package except the objects file to a directory. The
+     * source package may be a directory or an opened zip.
+     *
+     * Binaries are hard linked rather than copied when the source is a directory
+     * on the same file system, unless the system property package.link is
+     * false. Binaries are only ever replaced, never modified in place, so the
+     * packages cannot affect each other through a shared binary. Anything which
+     * cannot be linked is copied.
      *
      * @param packageDir
+     * @param outputDir
      * @throws IOException
      */
+    public static void copyPackage(Path packageDir, Path outputDir) throws IOException {
+        initPackage(outputDir);
 
-    // TODO These checks will only work after remediation due to the publicationAbstract change and the id normalization
-    public static void check(Path packageDir) throws IOException {
-        if (!Files.isRegularFile(getObjectsFile(packageDir))) {
-            throw new IOException("No objects file");
+        boolean link = !"false".equals(System.getProperty("package.link"))
+                && packageDir.getFileSystem() == FileSystems.getDefault()
+                && outputDir.getFileSystem() == FileSystems.getDefault();
+        Path files_dir = getFilesDir(packageDir);
+
+        for (Path file : list_other_files(packageDir)) {
+            Path target = outputDir;
+
+            for (Path name : packageDir.relativize(file)) {
+                target = target.resolve(name.toString());
+            }
+
+            Files.createDirectories(target.getParent());
+
+            // Other files, such as the binary index, may be appended to
+            if (link && file.startsWith(files_dir)) {
+                link = link_file(file, target);
+
+                if (link) {
+                    continue;
+                }
+            }
+
+            Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
         }
+    }
+
+    // Replace target with a hard link to file. Return false if links are not
+    // possible, for example across file systems.
+    private static boolean link_file(Path file, Path target) throws IOException {
+        Files.deleteIfExists(target);
 
-        if (!Files.isDirectory(getFilesDir(packageDir))) {
-            throw new IOException("No files directory");
+        try {
+            Files.createLink(target, file);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            System.err.println("Warning. Copying binaries as they cannot be linked: " + e.getMessage());
+            return false;
         }
+    }
+
+    /**
+     * Write a zip package containing the given objects and everything else in a
+     * source package except its objects file. The zip is written as a stream.
+     *
+     * @param zip
+     * @param packageDir source package, a directory or an opened zip
+     * @param objects
+     * @throws IOException
+     */
+    public static void writeZip(Path zip, Path packageDir, Stream<JsonObject> objects) throws IOException {
+        try (ZipOutputStream zip_out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(zip)))) {
+            // Not closed as that would close the zip
+            ObjectsWriter out = new ObjectsWriter(Channels.newChannel(zip_out));
 
-        Map<String, JsonObject> objects = new HashMap<>();
+            if (Boolean.getBoolean("package.partition")) {
+                write_zip_partitioned(zip_out, out, zip.toAbsolutePath().getParent(), objects);
+            } else {
+                zip_out.putNextEntry(new ZipEntry(OBJECTS_FILE));
+                writeObjects(out, objects);
+                zip_out.closeEntry();
+            }
+
+            zip_out.putNextEntry(new ZipEntry(FILES_DIR + "/"));
+            zip_out.closeEntry();
+
+            for (Path file : list_other_files(packageDir)) {
+                StringBuilder name = new StringBuilder();
 
-        readObjects(packageDir).forEach(o -> {
-            objects.put(o.getString("id"), o);
-        });
+                for (Path p : packageDir.relativize(file)) {
+                    if (name.length() > 0) {
+                        name.append('/');
+                    }
 
-        PassRemediator.getTargetRelations(readObjects(packageDir)).values().forEach(rels -> {
-            rels.forEach(rel -> {
-                if (!objects.containsKey(rel.source)) {
-                    throw new RuntimeException("Cannot find source of relation: " + rel);
+                    name.append(p.toString());
                 }
 
-                if (!objects.containsKey(rel.target)) {
-                    throw new RuntimeException("Cannot find target of relation: " + rel);
+                zip_out.putNextEntry(new ZipEntry(name.toString()));
+                Files.copy(file, zip_out);
+                zip_out.closeEntry();
+            }
+        }
+    }
+
+    // Only one zip entry can be written at a time so sort the objects to make
+    // each type contiguous
+    private static void write_zip_partitioned(ZipOutputStream zip_out, ObjectsWriter out, Path tmp_parent,
+            Stream<JsonObject> objects) throws IOException {
+        try (ObjectsSorter sorter = new ObjectsSorter(tmp_parent, ObjectsSorter.getRunSize())) {
+            sorter.addAll(objects);
+
+            String type = null;
+
+            for (JsonObject o : (Iterable<JsonObject>) sorter.sorted()::iterator) {
+                if (!o.getString("type").equals(type)) {
+                    if (type != null) {
+                        out.flush();
+                        zip_out.closeEntry();
+                    }
+
+                    type = o.getString("type");
+                    zip_out.putNextEntry(new ZipEntry(TYPE_OBJECTS_PREFIX + type + TYPE_OBJECTS_SUFFIX));
                 }
-            });
-        });
 
-        readObjects(packageDir).forEach(o -> check(packageDir, o));
+                out.write(o);
+            }
+
+            if (type != null) {
+                out.flush();
+                zip_out.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * Validate a package and print the report to stderr, see
+     * {@link PackageValidator}.
+     *
+     * @param packageDir
+     * @throws IOException if the package is not valid
+     */
+
+    // TODO These checks will only work after remediation due to the publicationAbstract change and the id normalization
+    public static void check(Path packageDir) throws IOException {
+        PackageValidator.Report report = PackageValidator.validate(packageDir);
+
+        report.print();
+
+        if (!report.isValid()) {
+            throw new IOException("Package failed checks with " + report.getErrors().size() + " errors");
+        }
     }
 }
@@ -0,0 +1,297 @@
+package org.eclipse.pass.migration;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import javax.json.JsonObject;
+
+/**
+ * Validates a package in a single pass over the objects file. Objects are
+ * checked as they are parsed while their ids are encoded as ints and their
+ * relations are collected into a {@link RelationIndex}. Once the pass is done,
+ * each target of a relation which is not an object is reported with the
+ * relations to it.
+ *
+ * The binaries of File objects are verified concurrently with the pass. If the
+ * package has a binary index, see {@link BinaryStore}, the size and digest of
+ * each binary are checked against it. If the package has a {@link Manifest},
+ * each binary is checked against its digest and binaries in the manifest which
+ * no File refers to are verified as well. Otherwise only the presence of the
+ * binary is checked. Each binary is read at most once.
+ *
+ * All failures are collected into a report rather than stopping at the first.
+ */
+public class PackageValidator {
+    private static final int DEFAULT_THREADS = 8;
+
+    /**
+     * Result of validating a package.
+     */
+    public static class Report {
+        private final Queue<String> errors = new ConcurrentLinkedQueue<>();
+        private final Queue<String> warnings = new ConcurrentLinkedQueue<>();
+        private final LongAdder objects = new LongAdder();
+        private int binaries;
+
+        void error(String message) {
+            errors.add(message);
+        }
+
+        void warning(String message) {
+            warnings.add(message);
+        }
+
+        public List<String> getErrors() {
+            return new ArrayList<>(errors);
+        }
+
+        public List<String> getWarnings() {
+            return new ArrayList<>(warnings);
+        }
+
+        public long getObjectCount() {
+            return objects.sum();
+        }
+
+        public int getBinaryCount() {
+            return binaries;
+        }
+
+        public boolean isValid() {
+            return errors.isEmpty();
+        }
+
+        /**
+         * Print warnings, errors and a summary to stderr.
+         */
+        public void print() {
+            warnings.forEach(w -> System.err.println("Warning. " + w));
+            errors.forEach(e -> System.err.println("Error! " + e));
+
+            System.err.println("Checked " + objects.sum() + " objects and " + binaries + " binaries. Errors: "
+                    + errors.size() + " Warnings: " + warnings.size());
+        }
+    }
+
+    // Ids of the objects and their relations collected by the threads parsing
+    // the objects
+    private static class Relations {
+        private final Dictionary ids = new Dictionary();
+        private final Dictionary names = new Dictionary();
+        private final BitSet objects = new BitSet();
+        private final RelationIndex.Builder builder = new RelationIndex.Builder();
+
+        // Return false if an object with the id was already added
+        synchronized boolean add(String id, List<Relation> relations) {
+            int source = ids.encode(id);
+            boolean added = !objects.get(source);
+
+            objects.set(source);
+
+            for (Relation r : relations) {
+                builder.add(source, names.encode(r.name), ids.encode(r.target));
+            }
+
+            return added;
+        }
+
+        void check(Report report) {
+            RelationIndex index = builder.build(ids.size());
+
+            index.targets().filter(t -> !objects.get(t)).forEach(t -> {
+                index.forEach(t, (source, name) -> {
+                    report.error("Cannot find target of relation: "
+                            + new Relation(ids.decode(source), names.decode(name), ids.decode(t)));
+                });
+            });
+        }
+    }
+
+    private PackageValidator() {
+    }
+
+    /**
+     * Validate a package using the number of threads given by the system
+     * property package.check.threads to verify binaries.
+     *
+     * @param packageDir
+     * @return report
+     * @throws IOException if the package cannot be read
+     */
+    public static Report validate(Path packageDir) throws IOException {
+        return validate(packageDir, Integer.getInteger("package.check.threads", DEFAULT_THREADS));
+    }
+
+    /**
+     * @param packageDir
+     * @param threads number of threads verifying binaries
+     * @return report
+     * @throws IOException if the package cannot be read
+     */
+    public static Report validate(Path packageDir, int threads) throws IOException {
+        Report report = new Report();
+
+        if (!PackageUtil.hasObjects(packageDir)) {
+            report.error("No objects file");
+            return report;
+        }
+
+        if (!Files.isDirectory(PackageUtil.getFilesDir(packageDir))) {
+            report.error("No files directory");
+            return report;
+        }
+
+        Map<String, BinaryStore.Entry> index = BinaryStore.readIndex(packageDir);
+        Map<String, String> manifest = Map.of();
+
+        try {
+            manifest = Manifest.read(packageDir);
+        } catch (IOException e) {
+            report.error("Cannot read manifest: " + e.getMessage());
+        }
+
+        Map<String, String> digests = manifest;
+        Set<String> verified_keys = ConcurrentHashMap.newKeySet();
+        Relations relations = new Relations();
+        Queue<CompletableFuture<Void>> verifications = new ConcurrentLinkedQueue<>();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "binary-verify");
+            t.setDaemon(true);
+            return t;
+        });
+
+        try {
+            try (Stream<JsonObject> objects = PackageUtil.readObjectsUnordered(packageDir)) {
+                objects.forEach(o -> {
+                    report.objects.increment();
+
+                    String path = check_object(o, relations, report);
+
+                    if (path != null) {
+                        String id = o.getString("id");
+                        String key = Manifest.key(path);
+
+                        verified_keys.add(key);
+                        verifications.add(CompletableFuture.runAsync(() -> verify_binary(packageDir, path,
+                                index.get(path), digests.get(key), "File: " + id, report), pool));
+                    }
+                });
+            }
+
+            digests.forEach((key, digest) -> {
+                if (!verified_keys.contains(key)) {
+                    verifications.add(CompletableFuture.runAsync(
+                            () -> verify_binary(packageDir, key, null, digest, "manifest path: " + key, report),
+                            pool));
+                }
+            });
+
+            relations.check(report);
+
+            verifications.forEach(CompletableFuture::join);
+            report.binaries = verifications.size();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        return report;
+    }
+
+    // Check an object and collect its id and relations. Return path of binary
+    // to verify or null.
+    private static String check_object(JsonObject o, Relations relations, Report report) {
+        for (String k : o.keySet()) {
+            if (k.startsWith("@")) {
+                report.error("Key started with @ in object: " + o);
+                return null;
+            }
+        }
+
+        if (!o.containsKey("id")) {
+            report.error("Missing required key id: " + o);
+            return null;
+        }
+
+        if (!o.containsKey("type")) {
+            report.error("Missing required key type: " + o);
+            return null;
+        }
+
+        String id = o.getString("id");
+        List<Relation> object_relations = List.of();
+
+        try {
+            object_relations = PassRemediator.getRelations(o);
+        } catch (RuntimeException e) {
+            report.error("Cannot get relations of object: " + e.getMessage() + ": " + o);
+        }
+
+        if (!relations.add(id, object_relations)) {
+            report.error("Duplicate id: " + id);
+        }
+
+        if (o.getString("type").equals("File")) {
+            if (!o.containsKey("uri")) {
+                report.warning("No uri for File: " + id);
+                return null;
+            }
+
+            return o.getString("uri");
+        }
+
+        return null;
+    }
+
+    // Verify a binary against its index entry and manifest digest, either of
+    // which may be null. The name identifies the binary in messages.
+    private static void verify_binary(Path packageDir, String path, BinaryStore.Entry entry, String expected_digest,
+            String name, Report report) {
+        Path file = PackageUtil.getFile(packageDir, path);
+
+        try {
+            if (!Files.isRegularFile(file)) {
+                report.error("Cannot find binary for " + name);
+                return;
+            }
+
+            if (entry == null && expected_digest == null) {
+                return;
+            }
+
+            if (entry != null) {
+                long size = Files.size(file);
+
+                if (size != entry.size) {
+                    report.error("Binary has size " + size + " instead of " + entry.size + " for " + name);
+                    return;
+                }
+            }
+
+            String digest = PackageUtil.digestFile(file);
+
+            if (entry != null && !digest.equals(entry.sha256)) {
+                report.error("Binary has digest " + digest + " instead of " + entry.sha256 + " for " + name);
+            } else if (expected_digest != null && !digest.equals(expected_digest)) {
+                report.error("Binary has digest " + digest + " instead of manifest digest " + expected_digest
+                        + " for " + name);
+            }
+        } catch (IOException e) {
+            report.error("Cannot read binary for " + name + ": " + e.getMessage());
+        }
+    }
+}
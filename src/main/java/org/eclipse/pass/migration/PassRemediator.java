@@ -4,44 +4,55 @@ import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Stream;
 
-import javax.json.Json;
 import javax.json.JsonArray;
 import javax.json.JsonArrayBuilder;
 import javax.json.JsonObject;
-import javax.json.JsonObjectBuilder;
 import javax.json.JsonString;
 import javax.json.JsonValue;
-import javax.json.JsonValue.ValueType;
+import javax.json.spi.JsonProvider;
 
-import org.apache.commons.io.FileUtils;
 import org.eclipse.pass.support.client.ModelUtil;
-import org.eclipse.pass.support.client.model.PassEntity;
 import org.eclipse.pass.support.client.model.Source;
 
 public class PassRemediator {
     private static final String FCREPO_ID_MARKER = "/rest";
 
-    private static final Set<String> non_relation_list_properties = new HashSet<>();
+    // Types which get_unique_keys checks for duplicates
+    private static final List<String> DUPLICATE_TYPES = List.of("Grant", "Journal", "Funder", "Publisher",
+            "Submission", "Publication", "RepositoryCopy");
 
-    static {
-        non_relation_list_properties.addAll(List.of("issns", "externalIds", "locatorIds", "roles", "schemas"));
+    private static final JsonProvider json = JsonProvider.provider();
+
+    // A change to a property of an object found by a remediation step. Steps
+    // only return changes to values which differ.
+    private static class Update {
+        final int id;
+        final String key;
+        final JsonValue value;
+
+        Update(int id, String key, JsonValue value) {
+            this.id = id;
+            this.key = key;
+            this.value = value;
+        }
     }
 
     private Path input_package;
 
-    // Identifier -> PASS object
-    private final Map<String, JsonObject> objects;
-
-    // Target object id -> list of relationships with this object as a target
-    Map<String, List<Relation>> target_relations = new HashMap<>();
+    // PASS objects by the code of their identifier
+    private final ObjectStore objects;
 
     private static String get_string(JsonObject o, String key) {
         return get_string(o, key, null);
@@ -59,67 +70,50 @@ public class PassRemediator {
         throw new RuntimeException("Object missing required key " + key + ": " + o);
     }
 
-    private static JsonArray get_array(JsonObject o, String key) {
-        if (o.containsKey(key)) {
-            return o.getJsonArray(key);
+    private String get_string(int id, String key) {
+        if (objects.containsKey(id, key)) {
+            return objects.getString(id, key);
         }
 
-        throw new RuntimeException("Object missing required key " + key + ": " + o);
-    }
-
-    private static List<String> get_string_array(JsonObject o, String key) {
-        return get_array(o, key).stream().map(v -> JsonString.class.cast(v).getString()).toList();
+        throw new RuntimeException("Object missing required key " + key + ": " + objects.get(id));
     }
 
-    public PassRemediator(Path input_package) throws IOException {
-        this.objects = new HashMap<>();
-        this.input_package = input_package;
-
-        update(PackageUtil.readObjects(input_package).map(this::fix_field_names).map(this::normalize_identifiers));
+    private JsonArray get_array(int id, String key) {
+        if (objects.containsKey(id, key)) {
+            return objects.getArray(id, key);
+        }
 
-        this.target_relations = getTargetRelations(objects.values().stream());
+        throw new RuntimeException("Object missing required key " + key + ": " + objects.get(id));
     }
 
-    // Target id -> list of relations with that target
-    public static Map<String, List<Relation>> getTargetRelations(Stream<JsonObject> objects) {
-        Map<String, List<Relation>> result = new HashMap<>();
-
-        objects.forEach(o -> {
-            get_relations(o).forEach(r -> {
-                List<Relation> rels = result.get(r.target);
+    private List<String> get_string_array(int id, String key) {
+        return get_array(id, key).stream().map(v -> JsonString.class.cast(v).getString()).toList();
+    }
 
-                if (rels == null) {
-                    rels = new ArrayList<>();
-                    result.put(r.target, rels);
-                }
+    public PassRemediator(Path input_package) throws IOException {
+        this.objects = new ObjectStore();
+        this.input_package = input_package;
 
-                rels.add(r);
-            });
-        });
+        // Publication.abstract -> Publication.publicationAbstract
+        objects.renameOnAdd("Publication", "abstract", "publicationAbstract");
 
-        return result;
-    }
+        // Identifiers are normalized and fields renamed as objects are added
+        try (Stream<JsonObject> stream = PackageUtil.readObjects(input_package)) {
+            stream.forEach(o -> objects.add(o, this::normalize_identifier));
+        }
 
-    private Stream<JsonObject> get_objects_of_type(String type) {
-        return objects.values().stream().filter(o -> {
-            return get_string(o, "type").equals(type);
-        });
+        objects.compact();
     }
 
-    private void update(Stream<JsonObject> updated_objects) {
-        updated_objects.forEach(o -> {
-            objects.put(get_string(o, "id"), o);
-        });
+    private void update(List<Update> updates) {
+        updates.forEach(u -> objects.put(u.id, u.key, u.value));
     }
 
-    private void fix_locator_ids() {
-        List<JsonObject> updated_users = new ArrayList<>();
-
-        get_objects_of_type("User").forEach(o -> {
-            JsonObjectBuilder user_builder = Json.createObjectBuilder(o);
-
-            JsonArray locators = get_array(o, "locatorIds");
-            JsonArrayBuilder locators_builder = Json.createArrayBuilder();
+    private List<Update> fix_locator_ids() {
+        return Arrays.stream(objects.getIdsOfType("User")).parallel().mapToObj(id -> {
+            JsonArray locators = get_array(id, "locatorIds");
+            JsonArrayBuilder locators_builder = json.createArrayBuilder();
+            boolean changed = false;
 
             for (int i = 0; i < locators.size(); i++) {
                 String loc = locators.getString(i);
@@ -128,28 +122,11 @@ public class PassRemediator {
                 loc = loc.replace(":hopkinsid:", ":unique-id:");
 
                 locators_builder.add(loc);
+                changed |= !loc.equals(locators.getString(i));
             }
 
-            updated_users.add(user_builder.add("locatorIds", locators_builder).build());
-        });
-
-        update(updated_users.stream());
-    }
-
-    private JsonObject fix_field_names(JsonObject o) {
-        // Publication.abstract -> Publication.publicationAbstract
-        if (o.getString("type").equals("Publication")) {
-            if (o.containsKey("abstract")) {
-                JsonObjectBuilder builder = Json.createObjectBuilder(o);
-
-                builder.add("publicationAbstract", o.get("abstract"));
-                builder.remove("abstract");
-
-                return builder.build();
-            }
-        }
-
-        return o;
+            return changed ? new Update(id, "locatorIds", locators_builder.build()) : null;
+        }).filter(Objects::nonNull).toList();
     }
 
     private String normalize_identifier(String id) {
@@ -158,62 +135,27 @@ public class PassRemediator {
         return i == -1 ? id : id.substring(i + FCREPO_ID_MARKER.length());
     }
 
-    // Strip out the hostname portion of all identifiers
-    private JsonObject normalize_identifiers(JsonObject o) {
-        JsonObjectBuilder builder = Json.createObjectBuilder(o);
-
-        builder.add("id", normalize_identifier(get_string(o, "id")));
-
-        // Update all the targets in relations
-
-        Class<?> object_type = JsonUtil.getPassJavaType(get_string(o, "type"));
-
-        o.forEach((k, v) -> {
-            if (!k.equals("id") && !k.equals("type") && !k.equals("context")) {
-                Class<?> klass = JsonUtil.getPropertyJavaType(object_type, k);
-
-                if (PassEntity.class.isAssignableFrom(klass)) {
-                    builder.add(k, normalize_identifier(JsonString.class.cast(v).getString()));
-                } else if (klass == List.class && !non_relation_list_properties.contains(k)) {
-                    JsonArrayBuilder ab = Json.createArrayBuilder();
-
-                    v.asJsonArray().stream().forEach(v2 -> {
-                        ab.add(normalize_identifier(JsonString.class.cast(v2).getString()));
-                    });
-
-                    builder.add(k, ab.build());
-                }
-            }
-        });
-
-        return builder.build();
-    }
-
-    private void normalize_award_numbers() {
-        List<JsonObject> updated_grants = new ArrayList<>();
-
-        get_objects_of_type("Grant").forEach(o -> {
-            String num = get_string(o, "awardNumber");
-
-            num = ModelUtil.normalizeAwardNumber(num);
+    // Grants without an award number are removed by remove_useless_objects
+    private List<Update> normalize_award_numbers() {
+        return Arrays.stream(objects.getIdsOfType("Grant")).parallel().filter(id -> {
+            return objects.containsKey(id, "awardNumber");
+        }).mapToObj(id -> {
+            String old_num = get_string(id, "awardNumber");
+            String num = ModelUtil.normalizeAwardNumber(old_num);
 
             if (num == null) {
-                throw new RuntimeException("Unable to normalize awardNumber of grant: " + o);
+                throw new RuntimeException("Unable to normalize awardNumber of grant: " + objects.get(id));
             }
 
-            updated_grants.add(Json.createObjectBuilder(o).add("awardNumber", num).build());
-        });
-
-        update(updated_grants.stream());
+            return num.equals(old_num) ? null : new Update(id, "awardNumber", json.createValue(num));
+        }).filter(Objects::nonNull).toList();
     }
 
     // Strip host schema uri. Must start with /metadata-schemas/
-    private void normalize_repository_schemas() {
-        List<JsonObject> updated_reps = new ArrayList<>();
-
-        get_objects_of_type("Repository").forEach(o -> {
-            List<String> schemas = get_string_array(o, "schemas").stream().map(uri -> URI.create(uri).getPath())
-                    .toList();
+    private List<Update> normalize_repository_schemas() {
+        return Arrays.stream(objects.getIdsOfType("Repository")).parallel().mapToObj(id -> {
+            List<String> old_schemas = get_string_array(id, "schemas");
+            List<String> schemas = old_schemas.stream().map(uri -> URI.create(uri).getPath()).toList();
 
             schemas.forEach(uri -> {
                 if (!uri.startsWith("/metadata-schemas/")) {
@@ -221,17 +163,16 @@ public class PassRemediator {
                 }
             });
 
-            updated_reps.add(Json.createObjectBuilder(o).add("schemas", Json.createArrayBuilder(schemas)).build());
-        });
-
-        update(updated_reps.stream());
+            return schemas.equals(old_schemas) ? null
+                    : new Update(id, "schemas", json.createArrayBuilder(schemas).build());
+        }).filter(Objects::nonNull).toList();
     }
 
-    private void add_unique_key(List<String> keys, String type, JsonObject o, String... props) {
+    private void add_unique_key(List<String> keys, String type, int o, String... props) {
         StringBuilder key = new StringBuilder();
 
         for (String prop : props) {
-            if (o.containsKey(prop)) {
+            if (objects.containsKey(o, prop)) {
                 String s = get_string(o, prop);
 
                 if (!s.isEmpty()) {
@@ -245,9 +186,9 @@ public class PassRemediator {
         }
     }
 
-    private List<String> get_unique_keys(JsonObject o) {
+    private List<String> get_unique_keys(int o) {
         List<String> keys = new ArrayList<>();
-        String type = get_string(o, "type");
+        String type = objects.getType(o);
 
         // Only check certain types for dupes based on previous research
         switch (type) {
@@ -255,14 +196,14 @@ public class PassRemediator {
             add_unique_key(keys, type, o, "localKey");
 
             if (keys.isEmpty()) {
-                throw new RuntimeException("Cannot generate unique key for " + o);
+                throw new RuntimeException("Cannot generate unique key for " + objects.get(o));
             }
 
             break;
         case "Journal": {
             add_unique_key(keys, type, o, "nlmta");
 
-            if (o.containsKey("issns")) {
+            if (objects.containsKey(o, "issns")) {
                 String name = get_string(o, "journalName");
 
                 get_string_array(o, "issns").forEach(issn -> {
@@ -271,7 +212,7 @@ public class PassRemediator {
             }
 
             if (keys.isEmpty()) {
-                throw new RuntimeException("Cannot generate unique key for " + o);
+                throw new RuntimeException("Cannot generate unique key for " + objects.get(o));
             }
 
             break;
@@ -280,7 +221,7 @@ public class PassRemediator {
             add_unique_key(keys, type, o, "localKey");
 
             if (keys.isEmpty()) {
-                throw new RuntimeException("Cannot generate unique key for " + o);
+                throw new RuntimeException("Cannot generate unique key for " + objects.get(o));
             }
 
             break;
@@ -288,7 +229,7 @@ public class PassRemediator {
             add_unique_key(keys, type, o, "name", "pmcParticipation");
 
             if (keys.isEmpty()) {
-                throw new RuntimeException("Cannot generate unique key for " + o);
+                throw new RuntimeException("Cannot generate unique key for " + objects.get(o));
             }
 
             break;
@@ -300,7 +241,7 @@ public class PassRemediator {
                 add_unique_key(keys, type, o, "publication", "submitter");
 
                 if (keys.isEmpty()) {
-                    throw new RuntimeException("Cannot generate unique key for " + o);
+                    throw new RuntimeException("Cannot generate unique key for " + objects.get(o));
                 }
             }
 
@@ -311,7 +252,7 @@ public class PassRemediator {
             add_unique_key(keys, type, o, "pmid");
 
             if (keys.isEmpty()) {
-                throw new RuntimeException("Cannot generate unique key for " + o);
+                throw new RuntimeException("Cannot generate unique key for " + objects.get(o));
             }
 
             break;
@@ -320,7 +261,7 @@ public class PassRemediator {
             add_unique_key(keys, type, o, "repository", "publication");
 
             if (keys.isEmpty()) {
-                throw new RuntimeException("Cannot generate unique key for " + o);
+                throw new RuntimeException("Cannot generate unique key for " + objects.get(o));
             }
             break;
         }
@@ -328,138 +269,102 @@ public class PassRemediator {
         return keys;
     }
 
-    private JsonObject replace(JsonObject o, String key, String old_value, String new_value) {
-        JsonObjectBuilder result = Json.createObjectBuilder(o);
-
-        if (o.containsKey(key)) {
-            JsonValue jv = o.get(key);
-
-            if (jv.getValueType() == ValueType.ARRAY) {
-                JsonArrayBuilder ab = Json.createArrayBuilder();
-
-                jv.asJsonArray().forEach(v -> {
-                    if (JsonString.class.cast(v).getString().equals(old_value)) {
-                        ab.add(new_value);
-                    } else {
-                        ab.add(v);
-                    }
-                });
-
-                result.add(key, ab.build());
-            } else {
-                result.add(key, new_value);
-            }
-        }
-
-        return result.build();
-    }
-
-    private void fix_duplicates(Map<String, List<Relation>> target_relations, List<String> dupes) {
+    private void fix_duplicates(List<String> dupes) {
         // Keep the objects with the longest string representation which should be the
-        // one with the most information
-        Collections.sort(dupes,
-                (id1, id2) -> objects.get(id2).toString().length() - objects.get(id1).toString().length());
+        // one with the most information. The sort is stable, so of objects with the
+        // same length the first loaded is kept.
+        Map<String, Integer> lengths = new HashMap<>();
+
+        dupes.forEach(id -> lengths.put(id, objects.get(objects.find(id)).toString().length()));
+        Collections.sort(dupes, (id1, id2) -> lengths.get(id2) - lengths.get(id1));
 
         String prime = dupes.get(0);
+        int prime_code = objects.find(prime);
 
         System.err.println("Prime: " + prime);
 
         // Switch all relations which target a duplicate to the prime
         for (int i = 1; i < dupes.size(); i++) {
             String dup = dupes.get(i);
-
-            List<Relation> rels = target_relations.get(dup);
+            int dup_code = objects.find(dup);
 
             System.err.println("  Handling duplicate: " + dup);
 
-            if (rels != null) {
-                rels.forEach(r -> {
-                    System.err.println("  Updating relationship " + r.source + " " + r.name + " " + r.target);
-
-                    JsonObject source = objects.get(r.source);
+            // The index only has relations of objects which were not removed
+            objects.getRelationsTo(dup_code).forEach(r -> {
+                System.err.println("  Updating relationship " + r.source + " " + r.name + " " + r.target);
 
-                    // If source is null, then source was a removed duplicate and we don't need to
-                    // do anything
-                    if (source != null) {
-                        objects.put(r.source, replace(source, r.name, r.target, prime));
-
-                        // System.err.println("*** " + source + " **** " + objects.get(r.source));
-                    }
-                });
-            }
+                objects.replaceTarget(objects.find(r.source), r.name, dup_code, prime_code);
+            });
 
-            objects.remove(dup);
+            objects.remove(dup_code);
         }
     };
 
-    private static List<Relation> get_relations(JsonObject o) {
+    static List<Relation> getRelations(JsonObject o) {
         List<Relation> result = new ArrayList<>();
         String source = get_string(o, "id");
         Class<?> object_type = JsonUtil.getPassJavaType(get_string(o, "type"));
 
         o.forEach((k, v) -> {
-            if (!k.equals("id") && !k.equals("type") && !k.equals("context")) {
-                Class<?> klass = JsonUtil.getPropertyJavaType(object_type, k);
-
-                if (PassEntity.class.isAssignableFrom(klass)) {
-                    result.add(new Relation(source, k, v));
-                } else if (klass == List.class && !non_relation_list_properties.contains(k)) {
-                    v.asJsonArray().stream().forEach(v2 -> {
-                        result.add(new Relation(source, k, v2));
-                    });
-                }
+            int kind = ObjectStore.getKind(object_type, k);
+
+            if (kind == ObjectStore.RELATION) {
+                result.add(new Relation(source, k, v));
+            } else if (kind == ObjectStore.RELATIONS) {
+                v.asJsonArray().stream().forEach(v2 -> {
+                    result.add(new Relation(source, k, v2));
+                });
             }
         });
 
         return result;
     }
 
-    private void fix_duplicates() {
-        // Unique key -> list of objects with that key
-        Map<String, List<JsonObject>> key_map = new HashMap<>();
-
-        objects.values().forEach(o -> {
-            get_unique_keys(o).forEach(key -> {
-                List<JsonObject> dupes = key_map.get(key);
-
-                if (dupes == null) {
-                    dupes = new ArrayList<>();
-                    key_map.put(key, dupes);
+    /**
+     * Find the sets of duplicate objects. Each set holds the ids of objects of one
+     * type in the order they were loaded.
+     *
+     * @return sets of duplicates
+     */
+    Collection<List<String>> getDuplicateSets() {
+        UnionFind sets = new UnionFind(objects.getCodeCount());
+
+        // Each object is joined to the first object with each of its unique keys, so
+        // objects linked through a chain of different keys end up in the same set.
+        // Keys start with the type, so each type is handled on its own thread.
+        DUPLICATE_TYPES.parallelStream().forEach(type -> {
+            Map<String, Integer> first = new HashMap<>();
+
+            for (int o : objects.getIdsOfType(type)) {
+                for (String key : get_unique_keys(o)) {
+                    Integer f = first.putIfAbsent(key, o);
+
+                    if (f != null) {
+                        sets.union(f, o);
+                    }
                 }
-
-                dupes.add(o);
-            });
+            }
         });
 
-        // Remove entries without duplicates
-        key_map.entrySet().removeIf((e) -> e.getValue().size() == 1);
-
-        // Coalesce duplicate lists that share keys
-        List<List<String>> duplicates_list = new ArrayList<>();
-
-        Set<String> keys = key_map.keySet();
-
-        while (!keys.isEmpty()) {
-            String key = keys.iterator().next();
-
-            Set<String> dupes = new HashSet<String>();
+        // Representative of set -> objects in the set. The codes of ids follow the
+        // order in which ids were first seen, which may be as the target of a
+        // relation, so objects are taken from the lists of their types instead.
+        Map<Integer, List<String>> duplicate_sets = new LinkedHashMap<>();
 
-            // System.err.println(key);
-
-            // Check keys of duplicate objects for other duplicates from other keys
-            key_map.get(key).forEach(o -> {
-                get_unique_keys(o).forEach(k -> {
-                    List<JsonObject> key_dupes = key_map.get(k);
+        for (String type : DUPLICATE_TYPES) {
+            for (int o : objects.getIdsOfType(type)) {
+                if (sets.size(o) > 1) {
+                    duplicate_sets.computeIfAbsent(sets.find(o), r -> new ArrayList<>()).add(objects.getId(o));
+                }
+            }
+        }
 
-                    if (key_dupes != null) {
-                        key_dupes.stream().map(ko -> get_string(ko, "id")).forEach(dupes::add);
-                        keys.remove(k);
-                    }
-                });
-            });
+        return duplicate_sets.values();
+    }
 
-            duplicates_list.add(new ArrayList<>(dupes));
-        }
+    private void fix_duplicates() {
+        Collection<List<String>> duplicates_list = getDuplicateSets();
 
         System.err.println("Number of objects: " + objects.size());
         System.err.println("Number of duplicate sets: " + duplicates_list.size());
@@ -468,7 +373,7 @@ public class PassRemediator {
         Map<String, Integer> dupe_counts = new HashMap<>();
 
         duplicates_list.forEach(dupes -> {
-            String type = get_string(objects.get(dupes.get(0)), "type");
+            String type = objects.getType(objects.find(dupes.get(0)));
             dupe_counts.compute(type, (t, c) -> (c == null ? 0 : c) + dupes.size());
         });
 
@@ -477,71 +382,136 @@ public class PassRemediator {
         });
 
         duplicates_list.forEach(dupes -> {
-            fix_duplicates(target_relations, dupes);
+            fix_duplicates(dupes);
         });
 
         System.err.println("Number of objects after removing duplicates: " + objects.size());
     }
 
-    private void remove_useless_objects() {
-        List<JsonObject> toremove = new ArrayList<>();
+    private List<Integer> find_useless_objects() {
+        List<Integer> result = new ArrayList<>();
 
-        get_objects_of_type("Grant").forEach(o -> {
-            if (!o.containsKey("awardNumber")) {
-                toremove.add(o);
+        for (int o : objects.getIdsOfType("Grant")) {
+            if (!objects.containsKey(o, "awardNumber")) {
+                result.add(o);
             }
-        });
+        }
 
-        get_objects_of_type("Funder").forEach(o -> {
-            if (!o.containsKey("localKey") || !o.containsKey("name")) {
-                toremove.add(o);
+        for (int o : objects.getIdsOfType("Funder")) {
+            if (!objects.containsKey(o, "localKey") || !objects.containsKey(o, "name")) {
+                result.add(o);
             }
-        });
+        }
 
-        get_objects_of_type("File").forEach(o -> {
-            if (!o.containsKey("submission") && !o.containsKey("uri")) {
-                toremove.add(o);
+        for (int o : objects.getIdsOfType("File")) {
+            if (!objects.containsKey(o, "submission") && !objects.containsKey(o, "uri")) {
+                result.add(o);
             }
-        });
-
-        toremove.forEach(o -> {
-            String id = get_string(o, "id");
+        }
 
-            if (target_relations.containsKey(id)) {
-                throw new RuntimeException("Useless object is target of relation: " + target_relations.get(id));
+        result.forEach(o -> {
+            if (objects.isTarget(o)) {
+                throw new RuntimeException("Useless object is target of relation: " + objects.getRelationsTo(o));
             }
+        });
+
+        return result;
+    }
 
-            System.err.println("Removing " + o);
+    private void remove_useless_objects(List<Integer> toremove) {
+        toremove.forEach(o -> {
+            System.err.println("Removing " + objects.get(o));
 
-            objects.remove(id);
+            objects.remove(o);
         });
 
         System.err.println("Removed " + toremove.size());
     }
 
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw e;
+        }
+    }
+
     public void run() {
+        // These steps touch different types, or different Grants, so they only read
+        // the objects and run at the same time. Their changes are applied once all
+        // of them are done. A failure is reported as if the steps had run in order.
+        CompletableFuture<List<Integer>> useless = CompletableFuture.supplyAsync(this::find_useless_objects);
+        CompletableFuture<List<Update>> locators = CompletableFuture.supplyAsync(this::fix_locator_ids);
+        CompletableFuture<List<Update>> awards = CompletableFuture.supplyAsync(this::normalize_award_numbers);
+        CompletableFuture<List<Update>> schemas = CompletableFuture.supplyAsync(this::normalize_repository_schemas);
+
+        CompletableFuture.allOf(useless, locators, awards, schemas).exceptionally(e -> null).join();
+
+        List<Integer> toremove = await(useless);
+        List<Update> locator_updates = await(locators);
+        List<Update> award_updates = await(awards);
+        List<Update> schema_updates = await(schemas);
+
         System.err.println("Remove not needed objects");
-        remove_useless_objects();
+        remove_useless_objects(toremove);
 
         System.err.println("Fixing User locator ids");
-        fix_locator_ids();
+        update(locator_updates);
 
         System.err.println("Normalizing Grant award numbers");
-        normalize_award_numbers();
+        update(award_updates);
 
         System.err.println("Normalizing repository schemas");
-        normalize_repository_schemas();
+        update(schema_updates);
 
         System.err.println("Fixing duplicates");
         fix_duplicates();
     }
 
-    public void writePackage(Path output_dir) throws IOException {
-        FileUtils.copyDirectory(input_package.toFile(), output_dir.toFile(), true);
-        PackageUtil.writeObjects(output_dir, objects.values().stream());
+    /**
+     * Write the remediated objects and the rest of the input package to a new
+     * package. The output is written as a zip if it ends in .zip.
+     *
+     * If the system property package.sort is true, the objects are written
+     * sorted by type and id, see {@link ObjectsSorter}. Sorted runs of
+     * package.sort.run objects are spilled next to the output.
+     *
+     * @param output package directory or zip file
+     * @throws IOException
+     */
+    public void writePackage(Path output) throws IOException {
+        if (!Boolean.getBoolean("package.sort")) {
+            write_package(output, objects.objects());
+            return;
+        }
+
+        Path tmp_parent = output.toAbsolutePath().getParent();
+
+        try (ObjectsSorter sorter = new ObjectsSorter(tmp_parent, ObjectsSorter.getRunSize())) {
+            sorter.addAll(objects.objects());
+            write_package(output, sorter.sorted());
+        }
+    }
+
+    private void write_package(Path output, Stream<JsonObject> stream) throws IOException {
+        if (PackageUtil.isZip(output)) {
+            PackageUtil.writeZip(output, input_package, stream);
+        } else {
+            PackageUtil.copyPackage(input_package, output);
+            PackageUtil.writeObjects(output, stream);
+        }
     }
 
+    // Materialized objects in the order they are written
     Map<String, JsonObject> getObjects() {
-        return objects;
+        Map<String, JsonObject> result = new LinkedHashMap<>();
+
+        objects.ids().forEach(id -> result.put(objects.getId(id), objects.get(id)));
+
+        return result;
     }
 }
@@ -0,0 +1,213 @@
+package org.eclipse.pass.migration;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Index of the relations between objects by target in compressed sparse row
+ * form. Objects and property names are identified by int codes, see
+ * {@link Dictionary}. The source and property name of the relations with each
+ * target are held in a contiguous range of two int arrays found through an
+ * array of offsets by target, so a relation costs two ints.
+ *
+ * The index is updated in place as relations change. A removed relation is
+ * marked in its range and a relation added after the index is built is
+ * appended to a small array for its target.
+ *
+ * Not safe for use by multiple threads.
+ */
+class RelationIndex {
+    /**
+     * Receives the relations with a target.
+     */
+    interface Consumer {
+        void accept(int source, int name);
+    }
+
+    /**
+     * Collects relations and builds an index from them.
+     */
+    static class Builder {
+        // Source, name and target of each relation
+        private int[] relations = new int[3 * 1024];
+        private int count;
+
+        void add(int source, int name, int target) {
+            if (count + 3 > relations.length) {
+                relations = Arrays.copyOf(relations, relations.length * 2);
+            }
+
+            relations[count++] = source;
+            relations[count++] = name;
+            relations[count++] = target;
+        }
+
+        /**
+         * @param size number of object codes, more than the largest target
+         * @return index
+         */
+        RelationIndex build(int size) {
+            int[] offsets = new int[size + 1];
+
+            for (int i = 2; i < count; i += 3) {
+                offsets[relations[i] + 1]++;
+            }
+
+            for (int t = 0; t < size; t++) {
+                offsets[t + 1] += offsets[t];
+            }
+
+            int[] next = Arrays.copyOf(offsets, size);
+            int[] sources = new int[count / 3];
+            int[] names = new int[count / 3];
+
+            for (int i = 0; i < count; i += 3) {
+                int e = next[relations[i + 2]]++;
+
+                sources[e] = relations[i];
+                names[e] = relations[i + 1];
+            }
+
+            relations = null;
+
+            return new RelationIndex(offsets, sources, names);
+        }
+    }
+
+    private static final int REMOVED = -1;
+
+    private final int[] offsets;
+    private final int[] sources;
+    private final int[] names;
+
+    // By target, the count followed by source and name of relations added since
+    // the index was built
+    private int[][] added = new int[0][];
+
+    private RelationIndex(int[] offsets, int[] sources, int[] names) {
+        this.offsets = offsets;
+        this.sources = sources;
+        this.names = names;
+    }
+
+    private int built_size() {
+        return offsets.length - 1;
+    }
+
+    private int[] get_added(int target) {
+        return target < added.length ? added[target] : null;
+    }
+
+    /**
+     * @param source
+     * @param name
+     * @param target
+     */
+    void add(int source, int name, int target) {
+        if (target >= added.length) {
+            added = Arrays.copyOf(added, Math.max(target + 1, added.length + (added.length >> 1) + 16));
+        }
+
+        int[] a = added[target];
+
+        if (a == null) {
+            a = new int[5];
+        } else if (1 + 2 * a[0] + 2 > a.length) {
+            a = Arrays.copyOf(a, a.length * 2 + 1);
+        }
+
+        a[1 + 2 * a[0]] = source;
+        a[2 + 2 * a[0]] = name;
+        a[0]++;
+        added[target] = a;
+    }
+
+    /**
+     * Remove one relation matching the arguments.
+     *
+     * @param source
+     * @param name
+     * @param target
+     * @return whether a relation was removed
+     */
+    boolean remove(int source, int name, int target) {
+        int[] a = get_added(target);
+
+        if (a != null) {
+            for (int i = 0; i < a[0]; i++) {
+                if (a[1 + 2 * i] == source && a[2 + 2 * i] == name) {
+                    int last = a[0] - 1;
+
+                    a[1 + 2 * i] = a[1 + 2 * last];
+                    a[2 + 2 * i] = a[2 + 2 * last];
+                    a[0] = last;
+
+                    return true;
+                }
+            }
+        }
+
+        if (target < built_size()) {
+            for (int e = offsets[target]; e < offsets[target + 1]; e++) {
+                if (sources[e] == source && names[e] == name) {
+                    sources[e] = REMOVED;
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param target
+     * @param consumer receives the source and name of each relation with the
+     *            target which must not be changed meanwhile
+     */
+    void forEach(int target, Consumer consumer) {
+        if (target < built_size()) {
+            for (int e = offsets[target]; e < offsets[target + 1]; e++) {
+                if (sources[e] != REMOVED) {
+                    consumer.accept(sources[e], names[e]);
+                }
+            }
+        }
+
+        int[] a = get_added(target);
+
+        if (a != null) {
+            for (int i = 0; i < a[0]; i++) {
+                consumer.accept(a[1 + 2 * i], a[2 + 2 * i]);
+            }
+        }
+    }
+
+    /**
+     * @param target
+     * @return whether any relation has the target
+     */
+    boolean isTarget(int target) {
+        int[] a = get_added(target);
+
+        if (a != null && a[0] > 0) {
+            return true;
+        }
+
+        if (target < built_size()) {
+            for (int e = offsets[target]; e < offsets[target + 1]; e++) {
+                if (sources[e] != REMOVED) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return every target of a relation
+     */
+    IntStream targets() {
+        return IntStream.range(0, Math.max(built_size(), added.length)).filter(this::isTarget);
+    }
+}
@@ -0,0 +1,108 @@
+package org.eclipse.pass.migration;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retries an operation which fails with an IOException. The delay before each
+ * retry grows exponentially and is randomized so that many clients which failed
+ * at the same time do not retry at the same time.
+ *
+ * Failures which retrying cannot fix, such as a missing resource, should be
+ * signaled with a {@link NotRetryableException}.
+ */
+public class RetryPolicy {
+    /**
+     * A failure which will not succeed on retry.
+     */
+    public static class NotRetryableException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public NotRetryableException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * An operation to attempt.
+     *
+     * @param <T> result type
+     */
+    public interface Attempt<T> {
+        T call() throws IOException, InterruptedException;
+    }
+
+    private final int max_attempts;
+    private final long base_delay_ms;
+    private final long max_delay_ms;
+
+    /**
+     * @param max_attempts total number of attempts, at least 1
+     * @param base_delay_ms delay before the first retry
+     * @param max_delay_ms upper bound on the delay before a retry
+     */
+    public RetryPolicy(int max_attempts, long base_delay_ms, long max_delay_ms) {
+        if (max_attempts < 1) {
+            throw new IllegalArgumentException("At least one attempt required");
+        }
+
+        this.max_attempts = max_attempts;
+        this.base_delay_ms = base_delay_ms;
+        this.max_delay_ms = max_delay_ms;
+    }
+
+    /**
+     * @param code HTTP status code of a failed request
+     * @return whether the request may succeed if retried
+     */
+    public static boolean isRetryable(int code) {
+        return code == 408 || code == 429 || code >= 500;
+    }
+
+    /**
+     * @param attempt number of the attempt which failed, starting at 1
+     * @return randomized delay in milliseconds before the next attempt
+     */
+    public long getDelay(int attempt) {
+        long cap = base_delay_ms << Math.min(attempt - 1, 30);
+
+        if (cap <= 0 || cap > max_delay_ms) {
+            cap = max_delay_ms;
+        }
+
+        // Somewhere between half and all of the exponential delay
+        return cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1);
+    }
+
+    /**
+     * Call the operation until it succeeds, fails with a
+     * NotRetryableException, or runs out of attempts.
+     *
+     * @param <T> result type
+     * @param description of the operation for logging
+     * @param attempt operation
+     * @return result of the operation
+     * @throws IOException from the last attempt
+     * @throws InterruptedException
+     */
+    public <T> T execute(String description, Attempt<T> attempt) throws IOException, InterruptedException {
+        for (int i = 1;; i++) {
+            try {
+                return attempt.call();
+            } catch (NotRetryableException e) {
+                throw e;
+            } catch (IOException e) {
+                if (i >= max_attempts) {
+                    throw e;
+                }
+
+                long delay = getDelay(i);
+
+                System.err.println("Attempt " + i + " of " + description + " failed: " + e.getMessage()
+                        + ". Retrying in " + delay + " ms");
+
+                Thread.sleep(delay);
+            }
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package org.eclipse.pass.migration;
+
+import java.io.Reader;
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.json.Json;
+import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import javax.json.stream.JsonParserFactory;
+
+/**
+ * A page of Elasticsearch search results transformed into package objects. The
+ * response is parsed as a stream of events and each _source document is
+ * written straight out as a line of the objects file without building a tree
+ * of the document.
+ *
+ * Properties starting with "@" have that character stripped and
+ * journalName_suggest is removed. The uri of a File is rewritten to the path of
+ * its binary in the package.
+ */
+public class SearchPage {
+    private static final String FCREPO_URL_MARKER = "/fcrepo/";
+    private static final JsonParserFactory parser_factory = Json.createParserFactory(Map.of());
+    private static final JsonGeneratorFactory generator_factory = Json.createGeneratorFactory(Map.of());
+
+    /**
+     * A transformed search result.
+     */
+    public static class Hit {
+        // Single line JSON object
+        public final String json;
+
+        // Location of binary to retrieve or null
+        public final String binaryUrl;
+
+        // Path of binary in package or null
+        public final String binaryPath;
+
+        Hit(String json, String binaryUrl, String binaryPath) {
+            this.json = json;
+            this.binaryUrl = binaryUrl;
+            this.binaryPath = binaryPath;
+        }
+    }
+
+    private final List<Hit> hits = new ArrayList<>();
+    private int total = -1;
+    private JsonValue last;
+
+    private SearchPage() {
+    }
+
+    public List<Hit> getHits() {
+        return hits;
+    }
+
+    /**
+     * @return total number of documents matching the search
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * @return sort value of the last hit or null if there are no hits
+     */
+    public JsonValue getLastSort() {
+        return last;
+    }
+
+    /**
+     * Parse a search response.
+     *
+     * @param in response body
+     * @param fcrepo_base_url base url used to retrieve binaries
+     * @return page
+     */
+    public static SearchPage parse(Reader in, String fcrepo_base_url) {
+        SearchPage result = new SearchPage();
+
+        try (JsonParser parser = parser_factory.createParser(in)) {
+            expect(parser, Event.START_OBJECT);
+
+            while (parser.next() == Event.KEY_NAME) {
+                if (parser.getString().equals("hits")) {
+                    expect(parser, Event.START_OBJECT);
+                    result.parse_hits(parser, fcrepo_base_url);
+                } else {
+                    skip(parser, parser.next());
+                }
+            }
+        }
+
+        if (result.total == -1) {
+            throw new RuntimeException("Search response missing hits total");
+        }
+
+        return result;
+    }
+
+    private void parse_hits(JsonParser parser, String fcrepo_base_url) {
+        while (parser.next() == Event.KEY_NAME) {
+            switch (parser.getString()) {
+            case "total":
+                expect(parser, Event.VALUE_NUMBER);
+                total = parser.getInt();
+                break;
+            case "hits":
+                expect(parser, Event.START_ARRAY);
+
+                while (parser.next() == Event.START_OBJECT) {
+                    parse_hit(parser, fcrepo_base_url);
+                }
+
+                break;
+            default:
+                skip(parser, parser.next());
+            }
+        }
+    }
+
+    private void parse_hit(JsonParser parser, String fcrepo_base_url) {
+        Hit hit = null;
+
+        while (parser.next() == Event.KEY_NAME) {
+            switch (parser.getString()) {
+            case "_source":
+                expect(parser, Event.START_OBJECT);
+                hit = transform_source(parser, fcrepo_base_url);
+                break;
+            case "sort":
+                expect(parser, Event.START_ARRAY);
+                last = parser.getArray();
+                break;
+            default:
+                skip(parser, parser.next());
+            }
+        }
+
+        if (hit == null) {
+            throw new RuntimeException("Search hit missing _source");
+        }
+
+        hits.add(hit);
+    }
+
+    // Write out the transformed source document while parsing it
+    private static Hit transform_source(JsonParser parser, String fcrepo_base_url) {
+        StringWriter json = new StringWriter();
+        String binary_url = null;
+        String binary_path = null;
+
+        try (JsonGenerator gen = generator_factory.createGenerator(json)) {
+            gen.writeStartObject();
+
+            while (parser.next() == Event.KEY_NAME) {
+                String key = parser.getString();
+
+                if (key.startsWith("@")) {
+                    key = key.substring(1);
+                }
+
+                Event value = parser.next();
+
+                if (key.equals("journalName_suggest")) {
+                    skip(parser, value);
+                } else if (key.equals("uri")) {
+                    // Binary will be put in package so rewrite value
+                    if (value != Event.VALUE_STRING) {
+                        throw new RuntimeException("File uri is not a string");
+                    }
+
+                    String url = parser.getString();
+                    int loc = url.indexOf(FCREPO_URL_MARKER);
+
+                    if (loc == -1) {
+                        throw new RuntimeException("File uri structure unexpected: " + url);
+                    }
+
+                    binary_url = fcrepo_base_url + url.substring(loc + FCREPO_URL_MARKER.length());
+                    binary_path = URI.create(binary_url).getPath();
+
+                    gen.write(key, binary_path);
+                } else {
+                    copy(parser, value, gen, key);
+                }
+            }
+
+            gen.writeEnd();
+        }
+
+        return new Hit(json.toString(), binary_url, binary_path);
+    }
+
+    // Copy the value starting at the current event to the generator. The key is
+    // null for array elements.
+    private static void copy(JsonParser parser, Event event, JsonGenerator gen, String key) {
+        switch (event) {
+        case START_OBJECT:
+            if (key == null) {
+                gen.writeStartObject();
+            } else {
+                gen.writeStartObject(key);
+            }
+
+            while (parser.next() == Event.KEY_NAME) {
+                String k = parser.getString();
+                copy(parser, parser.next(), gen, k);
+            }
+
+            gen.writeEnd();
+            break;
+        case START_ARRAY:
+            if (key == null) {
+                gen.writeStartArray();
+            } else {
+                gen.writeStartArray(key);
+            }
+
+            for (Event e = parser.next(); e != Event.END_ARRAY; e = parser.next()) {
+                copy(parser, e, gen, null);
+            }
+
+            gen.writeEnd();
+            break;
+        case VALUE_STRING:
+            if (key == null) {
+                gen.write(parser.getString());
+            } else {
+                gen.write(key, parser.getString());
+            }
+
+            break;
+        case VALUE_NUMBER:
+            if (key == null) {
+                gen.write(parser.getBigDecimal());
+            } else {
+                gen.write(key, parser.getBigDecimal());
+            }
+
+            break;
+        case VALUE_TRUE:
+        case VALUE_FALSE:
+            if (key == null) {
+                gen.write(event == Event.VALUE_TRUE);
+            } else {
+                gen.write(key, event == Event.VALUE_TRUE);
+            }
+
+            break;
+        case VALUE_NULL:
+            if (key == null) {
+                gen.writeNull();
+            } else {
+                gen.writeNull(key);
+            }
+
+            break;
+        default:
+            throw new RuntimeException("Unexpected JSON event: " + event);
+        }
+    }
+
+    // Skip the value starting at the current event
+    private static void skip(JsonParser parser, Event event) {
+        if (event == Event.START_OBJECT) {
+            parser.skipObject();
+        } else if (event == Event.START_ARRAY) {
+            parser.skipArray();
+        }
+    }
+
+    private static void expect(JsonParser parser, Event expected) {
+        Event event = parser.next();
+
+        if (event != expected) {
+            throw new RuntimeException("Unexpected JSON event in search response: " + event + " instead of "
+                    + expected);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package org.eclipse.pass.migration;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+
+import okhttp3.Credentials;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.BufferedSink;
+
+/**
+ * Uploads binaries to the file service of PASS core as multipart requests,
+ * like the PASS client, but streams each binary from its channel in fixed
+ * size chunks. Memory used by an upload does not depend on the size of the
+ * binary.
+ *
+ * The URI of an uploaded binary is taken from the Location header of the
+ * response if present and otherwise built from the id of the stored file.
+ *
+ * Uploads which fail with a network error, a timeout or a 408, 429 or 5xx
+ * status are retried according to a {@link RetryPolicy}.
+ */
+public class StreamingBinaryUploader implements BinaryUploader {
+    private static final MediaType OCTET_STREAM = MediaType.get("application/octet-stream");
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final int DEFAULT_RETRY_ATTEMPTS = 8;
+    private static final long DEFAULT_RETRY_DELAY_MS = 1000;
+    private static final long DEFAULT_MAX_RETRY_DELAY_MS = 60 * 1000;
+
+    private final OkHttpClient client;
+    private final RetryPolicy retry;
+    private final HttpUrl file_url;
+    private final String credentials;
+
+    /**
+     * @param client
+     * @param retry policy for failed uploads
+     * @param base_url base url of PASS core
+     * @param user
+     * @param password
+     */
+    public StreamingBinaryUploader(OkHttpClient client, RetryPolicy retry, String base_url, String user,
+            String password) {
+        HttpUrl base = HttpUrl.get(base_url);
+
+        this.client = client;
+        this.retry = retry;
+        this.file_url = base.newBuilder().addPathSegment("file").build();
+        this.credentials = user == null ? null : Credentials.basic(user, password == null ? "" : password);
+    }
+
+    /**
+     * Create an uploader using the same system properties as the PASS client,
+     * pass.core.url, pass.core.user and pass.core.password. Retries are set by
+     * import.retry.attempts, import.retry.delay.ms and
+     * import.retry.max.delay.ms.
+     *
+     * @return uploader
+     */
+    public static StreamingBinaryUploader fromSystemProperties() {
+        OkHttpClient client = new OkHttpClient.Builder().connectTimeout(30, TimeUnit.SECONDS)
+                .readTimeout(120, TimeUnit.SECONDS).writeTimeout(120, TimeUnit.SECONDS).build();
+        RetryPolicy retry = new RetryPolicy(Integer.getInteger("import.retry.attempts", DEFAULT_RETRY_ATTEMPTS),
+                Long.getLong("import.retry.delay.ms", DEFAULT_RETRY_DELAY_MS),
+                Long.getLong("import.retry.max.delay.ms", DEFAULT_MAX_RETRY_DELAY_MS));
+
+        return new StreamingBinaryUploader(client, retry, System.getProperty("pass.core.url"),
+                System.getProperty("pass.core.user"), System.getProperty("pass.core.password"));
+    }
+
+    // Body which reads the binary each time it is written so a request can be
+    // retried
+    private static class FileBody extends RequestBody {
+        private final Path file;
+        private final long size;
+
+        FileBody(Path file) throws IOException {
+            this.file = file;
+            this.size = Files.size(file);
+        }
+
+        @Override
+        public MediaType contentType() {
+            return OCTET_STREAM;
+        }
+
+        @Override
+        public long contentLength() {
+            return size;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            ByteBuffer buf = ByteBuffer.allocate(CHUNK_SIZE);
+
+            try (SeekableByteChannel channel = Files.newByteChannel(file)) {
+                while (channel.read(buf) != -1) {
+                    buf.flip();
+
+                    while (buf.hasRemaining()) {
+                        sink.write(buf);
+                    }
+
+                    buf.clear();
+                }
+            }
+        }
+    }
+
+    @Override
+    public URI upload(String name, Path file) throws IOException {
+        try {
+            return retry.execute("upload of " + name, () -> upload_once(name, file));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Upload of " + name + " interrupted");
+        }
+    }
+
+    private URI upload_once(String name, Path file) throws IOException {
+        RequestBody body = new MultipartBody.Builder().setType(MultipartBody.FORM)
+                .addFormDataPart("file", name, new FileBody(file)).build();
+        Request.Builder request = new Request.Builder().url(file_url).header("Accept", "application/json")
+                .post(body);
+
+        if (credentials != null) {
+            request.header("Authorization", credentials);
+        }
+
+        try (Response response = client.newCall(request.build()).execute()) {
+            String result = response.body() == null ? "" : response.body().string();
+
+            if (!response.isSuccessful()) {
+                String message = "Upload of " + name + " failed: " + response.code() + " " + result;
+
+                if (RetryPolicy.isRetryable(response.code())) {
+                    throw new IOException(message);
+                }
+
+                throw new RetryPolicy.NotRetryableException(message);
+            }
+
+            String location = response.header("Location");
+
+            if (location != null) {
+                return file_url.resolve(location).uri();
+            }
+
+            try (JsonReader in = Json.createReader(new StringReader(result))) {
+                JsonObject o = in.readObject();
+                String id = o.getString("id", o.getString("uuid", null));
+
+                if (id == null) {
+                    throw new RetryPolicy.NotRetryableException("Upload of " + name + " returned no id: " + result);
+                }
+
+                return file_url.newBuilder().addPathSegments(id).build().uri();
+            }
+        }
+    }
+}
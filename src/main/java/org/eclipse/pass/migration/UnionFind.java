@@ -0,0 +1,72 @@
+package org.eclipse.pass.migration;
+
+/**
+ * Disjoint sets of the ints from 0 to a size, each starting in a set of its
+ * own. Sets are joined by size and paths are halved as they are followed, so a
+ * sequence of operations takes near linear time.
+ *
+ * Not safe for use by multiple threads, except that threads may operate on
+ * elements which are never joined to the elements of another thread.
+ */
+class UnionFind {
+    private final int[] parent;
+    private final int[] size;
+
+    /**
+     * @param size number of elements
+     */
+    UnionFind(int size) {
+        this.parent = new int[size];
+        this.size = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            parent[i] = i;
+            this.size[i] = 1;
+        }
+    }
+
+    /**
+     * @param i
+     * @return element representing the set of the element
+     */
+    int find(int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+
+        return i;
+    }
+
+    /**
+     * Join the sets of two elements.
+     *
+     * @param a
+     * @param b
+     */
+    void union(int a, int b) {
+        a = find(a);
+        b = find(b);
+
+        if (a == b) {
+            return;
+        }
+
+        if (size[a] < size[b]) {
+            int t = a;
+            a = b;
+            b = t;
+        }
+
+        parent[b] = a;
+        size[a] += size[b];
+    }
+
+    /**
+     * @param i
+     * @return number of elements in the set of the element
+     */
+    int size(int i) {
+        return size[find(i)];
+    }
+}
@@ -0,0 +1,37 @@
+package org.eclipse.pass.migration.cli;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.eclipse.pass.migration.ObjectsSorter;
+import org.eclipse.pass.migration.PackageDiff;
+import org.eclipse.pass.migration.PackageUtil;
+
+public class PassDiffApp {
+    private PassDiffApp() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: OLD_PACKAGE NEW_PACKAGE DELTA_DIR");
+            System.exit(1);
+        }
+
+        Path delta = Path.of(args[2]);
+
+        if (PackageUtil.isZip(delta)) {
+            System.err.println("Error! Delta must be written to a directory.");
+            System.exit(1);
+        }
+
+        try (PackageUtil.OpenPackage old_pkg = PackageUtil.open(Path.of(args[0]));
+                PackageUtil.OpenPackage new_pkg = PackageUtil.open(Path.of(args[1]))) {
+            System.err.println("Comparing " + args[0] + " to " + args[1]);
+
+            PackageDiff.Summary summary = PackageDiff.write(old_pkg.getDir(), new_pkg.getDir(), delta,
+                    ObjectsSorter.getRunSize());
+
+            System.err.println(summary);
+        }
+    }
+}
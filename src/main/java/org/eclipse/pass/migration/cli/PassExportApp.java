@@ -2,129 +2,286 @@ package org.eclipse.pass.migration.cli;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PrintWriter;
 import java.io.Reader;
-import java.io.StringReader;
-import java.net.URI;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
 
 import javax.json.Json;
 import javax.json.JsonArray;
 import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
 import javax.json.JsonReader;
-import javax.json.JsonString;
 import javax.json.JsonValue;
 
+import org.eclipse.pass.migration.AdaptivePageSize;
+import org.eclipse.pass.migration.AdaptiveRateLimiter;
+import org.eclipse.pass.migration.BinaryStore;
+import org.eclipse.pass.migration.ExportCheckpoint;
+import org.eclipse.pass.migration.ExportCheckpoint.Slice;
+import org.eclipse.pass.migration.ExportMetrics;
+import org.eclipse.pass.migration.FailedBinaries;
+import org.eclipse.pass.migration.ObjectsIndex;
+import org.eclipse.pass.migration.ObjectsWriter;
 import org.eclipse.pass.migration.PackageUtil;
+import org.eclipse.pass.migration.RetryPolicy;
+import org.eclipse.pass.migration.SearchPage;
 
 import okhttp3.Credentials;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
+import okhttp3.internal.http2.StreamResetException;
 
 /**
  * Use search_after to retrieve all PASS objects from an Elasticsearch index and
  * write out the result as nd json. Properties starting with "@" have that
- * character stripped and journalName_suggest is removed.
+ * character stripped and journalName_suggest is removed. Search responses are
+ * transformed as they are parsed, see {@link SearchPage}.
+ *
+ * Binaries of File objects are downloaded by a pool of worker threads while the
+ * rest of a page is transformed. Objects are still written in the order
+ * returned by the index and an object is only written after its binary is in
+ * the package.
+ *
+ * The next page of results is requested while the current page is written.
+ * Requests to the index are paced by an adaptive rate limiter which backs off
+ * when the index slows down or rejects requests. The number of documents per
+ * page grows while responses are fast and shrinks when they are slow or the
+ * HTTP/2 stream is reset. If resets continue, requests to the index fall back to
+ * HTTP/1.1.
+ *
+ * The index can be split into slices by ranges of ids. Each slice is paged
+ * through concurrently and written to the same package.
+ *
+ * Progress is recorded in a checkpoint in the package after every page. If the
+ * export is interrupted, running it again continues from the checkpoint.
+ *
+ * Binaries are recorded in the binary store of the package. A binary which is
+ * already in the package is requested conditionally and not downloaded again
+ * if it is unchanged.
+ *
+ * Requests which fail with a transient error are retried with exponential
+ * backoff. A binary which still cannot be retrieved is recorded in the failed
+ * binaries list of the package and the export continues. Running the export
+ * again retries the failed binaries.
+ *
+ * Throughput, latency and error metrics are reported periodically and written
+ * to the package at the end.
  */
 public class PassExportApp {
-    private static final String FCREPO_URL_MARKER = "/fcrepo/";
     private final static MediaType JSON_MEDIA_TYPE = MediaType.parse("application/json");
+    private static final int DEFAULT_DOWNLOAD_THREADS = 8;
+    private static final int DEFAULT_METRICS_INTERVAL_SECONDS = 30;
+    private static final long MAX_ES_DELAY_MS = 60 * 1000;
+    private static final int DEFAULT_RETRY_ATTEMPTS = 8;
+    private static final long DEFAULT_RETRY_DELAY_MS = 1000;
+    private static final long DEFAULT_MAX_RETRY_DELAY_MS = 60 * 1000;
+    private static final int DEFAULT_CONNECT_TIMEOUT_SECONDS = 30;
+    private static final int DEFAULT_READ_TIMEOUT_SECONDS = 120;
+    private static final int DEFAULT_SEARCH_TIMEOUT_SECONDS = 600;
+    private static final int BOUNDARY_PAGE_SIZE = 5000;
+    private static final int DEFAULT_PAGE_SIZE = 500;
+    private static final int MIN_PAGE_SIZE = 10;
+    private static final int DEFAULT_MAX_PAGE_SIZE = 10000;
+    private static final long DEFAULT_PAGE_TARGET_MS = 10 * 1000;
+    private static final int MAX_HTTP2_RESETS = 3;
+
+    private final OkHttpClient client;
+    private volatile OkHttpClient es_client;
+    private final String es_base_url;
+    private final String cookie;
+    private final String fcrepo_base_url;
+    private final String fcrepo_user;
+    private final String fcrepo_pass;
+    private final Path package_dir;
+    private final ExecutorService download_pool;
+    private ExecutorService page_fetcher;
+    private ExecutorService slice_pool;
+    private final AdaptiveRateLimiter es_limiter;
+    private final RetryPolicy retry;
+    private final AdaptivePageSize page_size;
+    private final AtomicInteger http2_resets;
+    private final ExportMetrics metrics;
+    private ExportCheckpoint checkpoint;
+    private BinaryStore store;
+    private FailedBinaries failed_binaries;
+
+    private PassExportApp(Path package_dir, String es_base_url, String cookie, String fcrepo_base_url,
+            String fcrepo_user, String fcrepo_pass, OkHttpClient client, OkHttpClient es_client,
+            int download_threads, AdaptivePageSize page_size, RetryPolicy retry) {
+        this.client = client;
+        this.es_client = es_client;
+        this.es_base_url = es_base_url;
+        this.cookie = cookie;
+        this.fcrepo_base_url = fcrepo_base_url;
+        this.fcrepo_user = fcrepo_user;
+        this.fcrepo_pass = fcrepo_pass;
+        this.package_dir = package_dir;
+        this.download_pool = Executors.newFixedThreadPool(download_threads, r -> {
+            Thread t = new Thread(r, "binary-download");
+            t.setDaemon(true);
+            return t;
+        });
+        this.es_limiter = new AdaptiveRateLimiter(MAX_ES_DELAY_MS);
+        this.page_size = page_size;
+        this.retry = retry;
+        this.http2_resets = new AtomicInteger();
+        this.metrics = new ExportMetrics();
+    }
 
-    private PassExportApp() {
+    // Shares the connection pool and timeouts of the given client
+    private static OkHttpClient http1_client(OkHttpClient client) {
+        return client.newBuilder().protocols(List.of(Protocol.HTTP_1_1)).build();
     }
 
-    private static JsonObject parse_json_object(Response response) throws IOException {
-        try (Reader in = response.body().charStream(); JsonReader json_in = Json.createReader(in)) {
+    private static JsonObject parse_json_object(Reader in) {
+        try (JsonReader json_in = Json.createReader(in)) {
             return json_in.readObject();
         }
     }
 
-    private static JsonValue parse_json_value(String s) throws IOException {
-        try (Reader in = new StringReader(s); JsonReader json_in = Json.createReader(in)) {
-            return json_in.readValue();
-        }
+    // Parses the body of a search response
+    private interface SearchParser<T> {
+        T parse(Reader in);
     }
 
-    // Transforms some fields and grabs any associated binary
-    private static JsonObject transform_pass_object(OkHttpClient client, String cookie, String fcrepo_base_url,
-            String fcrepo_user, String fcrepo_pass, JsonObject obj, Path package_dir) {
-        JsonObjectBuilder result = Json.createObjectBuilder();
-        obj.forEach((key, value) -> {
-            if (key.startsWith("@")) {
-                key = key.substring(1);
-            }
+    // Retry a binary until it is in the package or record it as failed
+    private void download_binary(String url, String path) {
+        long start = System.currentTimeMillis();
+        metrics.binariesInFlight.incrementAndGet();
 
-            // Put file binary in package and rewrite value
-            if (key.equals("uri")) {
-                String url = JsonString.class.cast(value).getString();
+        try {
+            retry.execute("getting file " + url, () -> {
+                try {
+                    fetch_binary(url, path);
+                } catch (IOException e) {
+                    metrics.binaryErrors.increment();
+                    throw e;
+                }
 
-                int loc = url.indexOf(FCREPO_URL_MARKER);
+                return null;
+            });
 
-                if (loc == -1) {
-                    throw new RuntimeException("File uri structure unexpected: " + url);
-                }
+            metrics.binaryLatency.record(System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            System.err.println("Error! Giving up on file: " + url + ": " + e.getMessage());
+            metrics.binariesFailed.increment();
+
+            try {
+                failed_binaries.add(url, path, e.getMessage());
+            } catch (IOException e2) {
+                throw new UncheckedIOException(e2);
+            }
+
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        } finally {
+            metrics.binariesInFlight.decrementAndGet();
+        }
+
+        // The binary is in the package. If it cannot be forgotten, it is only
+        // retried needlessly by the next export.
+        try {
+            failed_binaries.remove(path);
+        } catch (IOException e) {
+            System.err.println("Warning. Could not remove exported file from failed binaries: " + url + ": "
+                    + e.getMessage());
+        }
+    }
 
-                url = fcrepo_base_url + url.substring(loc + FCREPO_URL_MARKER.length());
+    private void fetch_binary(String url, String path) throws IOException {
+        Request.Builder request_builder = new Request.Builder();
 
-                System.err.println("Exporting file: " + url);
+        if (cookie != null) {
+            request_builder.header("Cookie", cookie).build();
+        }
 
-                String path = URI.create(url).getPath();
-                value = Json.createValue(path);
+        if (fcrepo_user != null && fcrepo_pass != null) {
+            request_builder.header("Authorization", Credentials.basic(fcrepo_user, fcrepo_pass));
+        }
 
-                Request.Builder request_builder = new Request.Builder();
+        // Ask for the binary only if it changed since it was written to the package
+        BinaryStore.Entry entry = store.get(path);
 
-                if (cookie != null) {
-                    request_builder.header("Cookie", cookie).build();
+        if (entry != null && store.isComplete(entry)) {
+            if (entry.etag == null && entry.lastModified == null) {
+                if (store.verify(entry)) {
+                    System.err.println("Already exported file: " + url);
+                    metrics.binariesSkipped.increment();
+                    return;
+                }
+            } else {
+                if (entry.etag != null) {
+                    request_builder.header("If-None-Match", entry.etag);
                 }
 
-                if (fcrepo_user != null && fcrepo_pass != null) {
-                    request_builder.header("Authorization", Credentials.basic(fcrepo_user, fcrepo_pass));
+                if (entry.lastModified != null) {
+                    request_builder.header("If-Modified-Since", entry.lastModified);
                 }
+            }
+        }
 
-                Request request = request_builder.url(url).build();
-                Response response;
+        Request request = request_builder.url(url).build();
 
-                try {
-                    response = client.newCall(request).execute();
+        try (Response response = client.newCall(request).execute()) {
+            if (response.code() == 304) {
+                System.err.println("Unchanged file: " + url);
+                metrics.binariesSkipped.increment();
+                return;
+            }
 
-                    if (!response.isSuccessful()) {
-                        throw new RuntimeException("HTTP request failed: " + url + " returned " + response.code());
-                    }
+            if (!response.isSuccessful()) {
+                String message = "HTTP request failed: " + url + " returned " + response.code();
 
-                    try (InputStream is = response.body().byteStream()) {
-                        PackageUtil.writeFile(package_dir, path, is);
-                    }
-                } catch (IOException e) {
-                    throw new RuntimeException("Getting binary failed: " + url, e);
+                if (RetryPolicy.isRetryable(response.code())) {
+                    throw new IOException(message);
                 }
-            }
 
-            if (!key.equals("journalName_suggest")) {
-                result.add(key, value);
+                throw new RetryPolicy.NotRetryableException(message);
             }
-        });
 
-        return result.build();
-    }
+            System.err.println("Exporting file: " + url);
 
-    private static JsonObject fetch_documents(OkHttpClient client, String es_base_url, String cookie,
-            JsonValue search_after) throws IOException {
-        // Doing more than 500 can cause http2 stream reset errors
+            try (InputStream is = response.body().byteStream()) {
+                BinaryStore.Entry written = store.write(path, is, response.header("ETag"),
+                        response.header("Last-Modified"));
 
-        JsonObjectBuilder query_builder = Json.createObjectBuilder().add("size", 500)
-                .add("query", Json.createObjectBuilder().add("match_all", Json.createObjectBuilder().build()).build())
-                .add("sort", Json.createArrayBuilder().add(Json.createObjectBuilder().add("@id", "asc")));
-
-        if (search_after != null) {
-            query_builder.add("search_after", search_after);
+                metrics.binaries.increment();
+                metrics.binaryBytes.add(written.size);
+            }
         }
+    }
 
-        String query = query_builder.build().toString();
-        RequestBody body = RequestBody.create(query, JSON_MEDIA_TYPE);
+    // The index signals it is overloaded with these status codes
+    private static boolean is_overloaded(int code) {
+        return code == 429 || code == 503 || code == 504;
+    }
+
+    private <T> T search(JsonObject search, SearchParser<T> parser) throws IOException, InterruptedException {
+        return retry.execute("search of " + es_base_url, () -> search_once(search, parser, latency -> {
+        }));
+    }
+
+    // Make a single request to the index. The listener is given the latency of
+    // a successful request.
+    private <T> T search_once(JsonObject search, SearchParser<T> parser, LongConsumer latency_listener)
+            throws IOException, InterruptedException {
+        RequestBody body = RequestBody.create(search.toString(), JSON_MEDIA_TYPE);
         Request.Builder request_builder = new Request.Builder();
 
         if (cookie != null) {
@@ -132,24 +289,169 @@ public class PassExportApp {
         }
 
         Request request = request_builder.url(es_base_url).post(body).build();
-        Response response = client.newCall(request).execute();
 
-        if (!response.isSuccessful()) {
-            throw new IOException("HTTP request failed: " + es_base_url + " returned " + response.code() + " "
-                    + response.body().string());
+        es_limiter.acquire();
+
+        long start = System.currentTimeMillis();
+        Response response;
+
+        metrics.esInFlight.incrementAndGet();
+
+        try {
+            response = es_client.newCall(request).execute();
+        } catch (IOException e) {
+            metrics.esInFlight.decrementAndGet();
+            metrics.esErrors.increment();
+            es_limiter.failure();
+            throw e;
         }
 
-        return parse_json_object(response);
+        T result;
+
+        try (response) {
+            if (!response.isSuccessful()) {
+                metrics.esErrors.increment();
+
+                String message = "HTTP request failed: " + es_base_url + " returned " + response.code();
+
+                if (is_overloaded(response.code())) {
+                    es_limiter.failure();
+
+                    throw new IOException(message + ". Index overloaded, delaying requests by "
+                            + es_limiter.getDelay() + " ms");
+                }
+
+                es_limiter.failure();
+
+                String error = response.body().string();
+
+                if (!error.isEmpty()) {
+                    message += " " + error;
+                }
+
+                if (RetryPolicy.isRetryable(response.code())) {
+                    throw new IOException(message);
+                }
+
+                throw new RetryPolicy.NotRetryableException(message);
+            }
+
+            try (Reader in = response.body().charStream()) {
+                result = parser.parse(in);
+            }
+        } finally {
+            metrics.esInFlight.decrementAndGet();
+        }
+
+        long latency = System.currentTimeMillis() - start;
+
+        metrics.esLatency.record(latency);
+        es_limiter.success(latency);
+        latency_listener.accept(latency);
+
+        return result;
     }
 
-    private static int write_objects_and_files(OkHttpClient client, String cookie, String fcrepo_base_url,
-            String fcrepo_user, String fcrepo_pass, PrintWriter out, Path package_dir, JsonObject es_result)
-            throws IOException {
-        JsonArray hits = es_result.getJsonObject("hits").getJsonArray("hits");
+    private static JsonObject match_all_query() {
+        return Json.createObjectBuilder().add("match_all", Json.createObjectBuilder().build()).build();
+    }
+
+    private static JsonArray sort_by_id() {
+        return Json.createArrayBuilder().add(Json.createObjectBuilder().add("@id", "asc")).build();
+    }
+
+    // Large pages can cause HTTP/2 stream resets from the proxy in front of the
+    // index so the page size is adjusted as pages are retrieved.
+    private SearchPage fetch_documents(JsonObject query, JsonValue search_after)
+            throws IOException, InterruptedException {
+        return retry.execute(search_after == null ? "first search" : "search after " + search_after, () -> {
+            int size = page_size.get();
+
+            JsonObjectBuilder query_builder = Json.createObjectBuilder().add("size", size).add("query", query)
+                    .add("sort", sort_by_id());
+
+            if (search_after != null) {
+                query_builder.add("search_after", search_after);
+            }
+
+            try {
+                SearchPage result = search_once(query_builder.build(),
+                        in -> SearchPage.parse(in, fcrepo_base_url), latency -> page_size.success(size, latency));
+                http2_resets.set(0);
+
+                return result;
+            } catch (StreamResetException e) {
+                handle_reset(size);
+                throw e;
+            }
+        });
+    }
+
+    // Shrink the page and fall back to HTTP/1.1 if resets continue
+    private void handle_reset(int size) {
+        boolean can_shrink = page_size.reset(size);
+
+        if (http2_resets.incrementAndGet() >= MAX_HTTP2_RESETS || !can_shrink) {
+            fall_back_to_http1();
+        }
 
-        PackageUtil.writeObjects(out, hits.stream().map(v -> transform_pass_object(client, cookie, fcrepo_base_url,
-                fcrepo_user, fcrepo_pass, v.asJsonObject().getJsonObject("_source"), package_dir)));
-        return hits.size();
+        System.err.println("Page of " + size + " objects was reset, next page will have " + page_size.get());
+    }
+
+    private synchronized void fall_back_to_http1() {
+        if (!es_client.protocols().contains(Protocol.HTTP_2)) {
+            return;
+        }
+
+        System.err.println("Repeated HTTP/2 stream resets, falling back to HTTP/1.1");
+
+        es_client = http1_client(es_client);
+        http2_resets.set(0);
+        page_size.clearResets();
+    }
+
+    // Fetch a page in the background
+    private CompletableFuture<SearchPage> prefetch_documents(JsonObject query, JsonValue search_after) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return fetch_documents(query, search_after);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+        }, page_fetcher);
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+
+            throw e;
+        }
+    }
+
+    // Retrieve the binaries of a page of results. Downloads for the whole page
+    // are started before waiting on any of them. The objects are returned in
+    // order once their binaries are in the package.
+    private List<String> download_page(SearchPage page) {
+        List<CompletableFuture<String>> pending = page.getHits().stream().map(hit -> {
+            if (hit.binaryUrl == null) {
+                return CompletableFuture.completedFuture(hit.json);
+            }
+
+            return CompletableFuture.supplyAsync(() -> {
+                download_binary(hit.binaryUrl, hit.binaryPath);
+                return hit.json;
+            }, download_pool);
+        }).toList();
+
+        return pending.stream().map(CompletableFuture::join).toList();
     }
 
     private static JsonValue get_last_sort(JsonObject es_result) {
@@ -162,50 +464,263 @@ public class PassExportApp {
         return hits.getJsonObject(hits.size() - 1).get("sort");
     }
 
-    private static void export(Path package_dir, String es_base_url, String fcrepo_base_url, String fcrepo_user,
-            String fcrepo_pass, String cookie, JsonValue last) throws IOException, InterruptedException {
-        OkHttpClient.Builder client_builder = new OkHttpClient.Builder();
-        OkHttpClient client = client_builder.build();
+    // Find the ids which split the index into the given number of ranges of
+    // about the same size. Only sort values are retrieved.
+    private List<JsonValue> find_slice_boundaries(int slices, int total) throws IOException, InterruptedException {
+        List<JsonValue> result = new ArrayList<>();
+        JsonValue last = null;
+        long seen = 0;
+
+        while (result.size() < slices - 1) {
+            JsonObjectBuilder query_builder = Json.createObjectBuilder().add("size", BOUNDARY_PAGE_SIZE)
+                    .add("_source", false).add("query", match_all_query()).add("sort", sort_by_id());
 
-        System.err.println("Exporting PASS objects from " + es_base_url);
+            if (last != null) {
+                query_builder.add("search_after", last);
+            }
+
+            JsonObject es_result = search(query_builder.build(), PassExportApp::parse_json_object);
+            JsonArray hits = es_result.getJsonObject("hits").getJsonArray("hits");
+
+            if (hits.size() == 0) {
+                break;
+            }
 
-        if (last != null) {
-            System.err.println("Resuming from: " + last);
+            for (JsonValue hit : hits) {
+                if (result.size() < slices - 1 && seen >= (result.size() + 1) * (long) total / slices) {
+                    result.add(hit.asJsonObject().getJsonArray("sort").get(0));
+                }
+
+                seen++;
+            }
+
+            last = get_last_sort(es_result);
+        }
+
+        return result;
+    }
+
+    private static JsonObject id_range_query(JsonValue from, JsonValue to) {
+        JsonObjectBuilder range = Json.createObjectBuilder();
+
+        if (from != null) {
+            range.add("gte", from);
+        }
+
+        if (to != null) {
+            range.add("lt", to);
+        }
+
+        return Json.createObjectBuilder()
+                .add("range", Json.createObjectBuilder().add("@id", range)).build();
+    }
+
+    private List<Slice> create_slices(int slices, int total) throws IOException, InterruptedException {
+        if (slices == 1) {
+            return List.of(new Slice(0, match_all_query()));
         }
 
-        int total = -1;
-        int count = 0;
+        System.err.println("Partitioning index into " + slices + " slices");
+
+        List<JsonValue> boundaries = find_slice_boundaries(slices, total);
+        List<Slice> result = new ArrayList<>();
+
+        for (int i = 0; i <= boundaries.size(); i++) {
+            JsonValue from = i == 0 ? null : boundaries.get(i - 1);
+            JsonValue to = i == boundaries.size() ? null : boundaries.get(i);
+
+            Slice slice = new Slice(i, id_range_query(from, to));
+            System.err.println(slice.name() + ": " + slice.query);
+
+            result.add(slice);
+        }
+
+        return result;
+    }
+
+    // Write a page of objects and record it in the checkpoint. Slices share the
+    // writer so the page is written and committed as a unit.
+    private void commit_page(FileChannel channel, ObjectsWriter out, Slice slice, List<String> page,
+            int page_total, JsonValue page_last) throws IOException {
+        synchronized (out) {
+            long start_offset = channel.position();
+
+            for (String line : page) {
+                out.writeLine(line);
+            }
+
+            out.flush();
+            channel.force(false);
+
+            metrics.objects.add(page.size());
+            metrics.objectBytes.add(channel.position() - start_offset);
+
+            slice.last = page_last;
+            slice.total = page_total;
+            slice.count += page.size();
+            slice.done = page_last == null;
+
+            checkpoint.commit(channel.position());
+        }
+    }
+
+    // Page through a slice writing out objects and files
+    private void export_slice(FileChannel channel, ObjectsWriter out, Slice slice, String prefix)
+            throws IOException {
+        try {
+            CompletableFuture<SearchPage> next = prefetch_documents(slice.query, slice.last);
+            JsonValue page_last;
 
-        try (PrintWriter out = PackageUtil.getObjectsWriter(package_dir)) {
             do {
-                if (last != null) {
-                    System.err.println("Searching after: " + last);
+                SearchPage page = await(next);
+                int page_total = page.getTotal();
+
+                if (slice.total == -1) {
+                    System.err.println(prefix + "Total objects: " + page_total);
+                } else if (slice.total != page_total) {
+                    // Fails the export once the other slices finish so the
+                    // package is closed cleanly
+                    throw new IOException("Total number of objects changed. Must rerun from start.");
+                }
+
+                page_last = page.getLastSort();
 
-                    // Sleep a little bit to not blast the index
-                    Thread.sleep(2 * 1000);
+                // Request the next page while this one is written
+                if (page_last != null) {
+                    System.err.println(prefix + "Searching after: " + page_last);
+                    next = prefetch_documents(slice.query, page_last);
                 }
 
-                JsonObject es_result = fetch_documents(client, es_base_url, cookie, last);
-                count += write_objects_and_files(client, cookie, fcrepo_base_url, fcrepo_user, fcrepo_pass, out,
-                        package_dir, es_result);
+                commit_page(channel, out, slice, download_page(page), page_total, page_last);
+            } while (page_last != null);
+        } catch (IOException e) {
+            throw new IOException(prefix + "Export failed after: " + slice.last, e);
+        }
+    }
+
+    private void export(int slice_count, int metrics_interval) throws IOException, InterruptedException {
+        System.err.println("Exporting PASS objects from " + es_base_url);
+
+        checkpoint = ExportCheckpoint.load(package_dir);
+
+        if (checkpoint == null) {
+            int total = get_total_matches(search(Json.createObjectBuilder().add("size", 0)
+                    .add("query", match_all_query()).build(), PassExportApp::parse_json_object));
+            System.err.println("Total objects: " + total);
+
+            checkpoint = ExportCheckpoint.create(package_dir, create_slices(slice_count, total), total);
+        } else if (checkpoint.isComplete()) {
+            System.err.println("Export already complete according to checkpoint");
+        } else {
+            System.err.println("Resuming from checkpoint at objects file offset: " + checkpoint.getObjectsOffset());
+
+            if (checkpoint.getSlices().size() != slice_count) {
+                System.err.println("Using the " + checkpoint.getSlices().size() + " slices of the checkpoint");
+            }
+        }
+
+        List<Slice> slices = checkpoint.getSlices();
+        boolean log_slice = slices.size() > 1;
+
+        // Index is rebuilt once the objects file is complete
+        ObjectsIndex.delete(package_dir);
+
+        page_fetcher = Executors.newFixedThreadPool(slices.size(), r -> {
+            Thread t = new Thread(r, "page-fetcher");
+            t.setDaemon(true);
+            return t;
+        });
+        slice_pool = Executors.newFixedThreadPool(slices.size(), r -> {
+            Thread t = new Thread(r, "slice-export");
+            t.setDaemon(true);
+            return t;
+        });
+
+        try (FileChannel channel = PackageUtil.getObjectsChannel(package_dir, checkpoint.getObjectsOffset());
+                ObjectsWriter out = PackageUtil.getObjectsWriter(channel);
+                BinaryStore binary_store = BinaryStore.open(package_dir)) {
+            metrics.startReporting(metrics_interval);
 
-                last = get_last_sort(es_result);
+            store = binary_store;
+            failed_binaries = FailedBinaries.load(package_dir);
 
-                if (total == -1) {
-                    total = get_total_matches(es_result);
-                    System.err.println("Total objects: " + total);
-                } else if (total != get_total_matches(es_result)) {
-                    System.err.println("Error! Total number of objects changed. Must rerun from start.");
-                    System.exit(1);
+            List<FailedBinaries.Entry> previous_failures = failed_binaries.getEntries();
+
+            List<CompletableFuture<Void>> running = new ArrayList<>();
+
+            for (Slice slice : slices) {
+                if (slice.done) {
+                    continue;
+                }
+
+                if (slice.last != null) {
+                    System.err.println((log_slice ? slice.name() + " " : "") + "Resuming from: " + slice.last);
                 }
-            } while (last != null);
+
+                running.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        export_slice(channel, out, slice, log_slice ? slice.name() + " " : "");
+
+                        if (log_slice) {
+                            System.err.println(slice.name() + " done. Objects exported: " + slice.count);
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, slice_pool));
+            }
+
+            await(CompletableFuture.allOf(running.toArray(CompletableFuture[]::new)));
+
+            retry_failed_binaries(previous_failures);
+
+            if (slices.stream().mapToInt(s -> s.total).sum() != checkpoint.getTotal()) {
+                throw new IOException("Total number of objects changed. Must rerun from start.");
+            }
+
+            checkpoint.complete();
+            ObjectsIndex.build(package_dir);
+        } finally {
+            slice_pool.shutdownNow();
+            page_fetcher.shutdownNow();
+            download_pool.shutdownNow();
+            metrics.stopReporting();
         }
 
+        metrics.report();
+        metrics.writeSummary(package_dir);
+
+        int count = slices.stream().mapToInt(s -> s.count).sum();
+
         System.err.println("Objects exported: " + count);
 
-        if (count != total) {
+        if (count != checkpoint.getTotal()) {
             System.err.println("Error! Number of exported objects does not match total objects");
         }
+
+        failed_binaries.getEntries().forEach(e -> {
+            System.err.println("Failed file: " + e.url + ": " + e.error);
+        });
+    }
+
+    // Retry binaries of objects written by a previous export which failed
+    private void retry_failed_binaries(List<FailedBinaries.Entry> entries) {
+        List<CompletableFuture<Void>> pending = entries.stream().filter(e -> failed_binaries.contains(e.path))
+                .map(e -> CompletableFuture.runAsync(() -> download_binary(e.url, e.path), download_pool))
+                .toList();
+
+        if (!pending.isEmpty()) {
+            System.err.println("Retrying files which previously failed: " + pending.size());
+        }
+
+        pending.forEach(CompletableFuture::join);
+    }
+
+    /**
+     * @return whether every binary of the export is in the package
+     */
+    private boolean has_all_binaries() {
+        return failed_binaries.size() == 0;
     }
 
     private static int get_total_matches(JsonObject es_result) {
@@ -213,28 +728,84 @@ public class PassExportApp {
     }
 
     public static void main(String[] args) throws IOException, InterruptedException {
-        if (args.length != 3 && args.length != 4) {
-            System.err.println("Usage: OUTPUT_DIR PASS_ES_URL COOKIE ?RESUME_TOKEN?");
+        if (args.length != 3) {
+            System.err.println("Usage: OUTPUT_DIR PASS_ES_URL COOKIE");
             System.exit(1);
         }
 
         Path package_dir = Path.of(args[0]);
-        String es_base_url = args[1];
-        String cookie = args[2].isEmpty() ? null : args[2];
-        JsonValue last = null;
 
-        if (args.length == 4) {
-            last = parse_json_value(args[3]);
+        if (PackageUtil.isZip(package_dir)) {
+            System.err.println("Error! Export must be written to a directory. The remediation app can write a zip.");
+            System.exit(1);
         }
 
+        if (PackageUtil.isPartitioned(package_dir)) {
+            System.err.println("Error! Cannot export to a package partitioned by type. Export to a new directory.");
+            System.exit(1);
+        }
+
+        String es_base_url = args[1];
+        String cookie = args[2].isEmpty() ? null : args[2];
+
         String fcrepo_user = System.getProperty("fcrepo.user");
         String fcrepo_pass = System.getProperty("fcrepo.pass");
         String fcrepo_url = System.getProperty("fcrepo.url");
+        int download_threads = Integer.getInteger("export.download.threads", DEFAULT_DOWNLOAD_THREADS);
+        int slices = Integer.getInteger("export.slices", 1);
+        int metrics_interval = Integer.getInteger("export.metrics.interval", DEFAULT_METRICS_INTERVAL_SECONDS);
+        int retry_attempts = Integer.getInteger("export.retry.attempts", DEFAULT_RETRY_ATTEMPTS);
+        long retry_delay_ms = Long.getLong("export.retry.delay.ms", DEFAULT_RETRY_DELAY_MS);
+        long max_retry_delay_ms = Long.getLong("export.retry.max.delay.ms", DEFAULT_MAX_RETRY_DELAY_MS);
+        int connect_timeout = Integer.getInteger("export.timeout.connect", DEFAULT_CONNECT_TIMEOUT_SECONDS);
+        int read_timeout = Integer.getInteger("export.timeout.read", DEFAULT_READ_TIMEOUT_SECONDS);
+        int search_timeout = Integer.getInteger("export.timeout.search", DEFAULT_SEARCH_TIMEOUT_SECONDS);
+        int initial_page_size = Integer.getInteger("export.page.size", DEFAULT_PAGE_SIZE);
+        int max_page_size = Integer.getInteger("export.page.max", DEFAULT_MAX_PAGE_SIZE);
+        long page_target_ms = Long.getLong("export.page.target.ms", DEFAULT_PAGE_TARGET_MS);
+        boolean http1 = Boolean.getBoolean("export.http1");
+
+        if (slices < 1) {
+            System.err.println("Error! export.slices must be at least 1");
+            System.exit(1);
+        }
+
+        if (max_page_size < MIN_PAGE_SIZE) {
+            System.err.println("Error! export.page.max must be at least " + MIN_PAGE_SIZE);
+            System.exit(1);
+        }
+
+        if (retry_attempts < 1) {
+            System.err.println("Error! export.retry.attempts must be at least 1");
+            System.exit(1);
+        }
+
+        AdaptivePageSize page_size = new AdaptivePageSize(initial_page_size, MIN_PAGE_SIZE, max_page_size,
+                page_target_ms);
+        RetryPolicy retry = new RetryPolicy(retry_attempts, retry_delay_ms, max_retry_delay_ms);
+
+        OkHttpClient client = new OkHttpClient.Builder().connectTimeout(connect_timeout, TimeUnit.SECONDS)
+                .readTimeout(read_timeout, TimeUnit.SECONDS).writeTimeout(read_timeout, TimeUnit.SECONDS).build();
+
+        // A search must complete in time, binaries may take as long as they keep arriving
+        OkHttpClient es_client = client.newBuilder().callTimeout(search_timeout, TimeUnit.SECONDS).build();
+
+        if (http1) {
+            es_client = http1_client(es_client);
+        }
 
         System.err.println("Initializing export package dir: " + package_dir);
         PackageUtil.initPackage(package_dir);
 
-        export(package_dir, es_base_url, fcrepo_url, fcrepo_user, fcrepo_pass, cookie, last);
+        PassExportApp app = new PassExportApp(package_dir, es_base_url, cookie, fcrepo_url, fcrepo_user,
+                fcrepo_pass, client, es_client, download_threads, page_size, retry);
+        app.export(slices, metrics_interval);
+
+        if (!app.has_all_binaries()) {
+            System.err.println("Error! Some files could not be exported, see "
+                    + FailedBinaries.getFile(package_dir) + ". Run the export again to retry them.");
+            System.exit(1);
+        }
 
         System.err.println("Running checks on package");
         PackageUtil.check(package_dir);
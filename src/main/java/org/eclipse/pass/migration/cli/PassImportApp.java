@@ -8,13 +8,17 @@ import java.time.ZonedDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 import javax.json.JsonObject;
 import javax.json.JsonString;
 import javax.json.JsonValue;
 
+import org.eclipse.pass.migration.BinaryUploader;
 import org.eclipse.pass.migration.JsonUtil;
+import org.eclipse.pass.migration.ObjectsIndex;
 import org.eclipse.pass.migration.PackageUtil;
+import org.eclipse.pass.migration.StreamingBinaryUploader;
 import org.eclipse.pass.support.client.ModelUtil;
 import org.eclipse.pass.support.client.PassClient;
 import org.eclipse.pass.support.client.model.File;
@@ -179,60 +183,79 @@ public class PassImportApp {
         PassClient client = PassClient.newInstance();
 
         if (args.length != 1) {
-            System.err.println("Usage: INPUT_DIR");
+            System.err.println("Usage: INPUT_PACKAGE");
             System.exit(1);
         }
 
-        Path input_dir = Path.of(args[0]);
+        try (PackageUtil.OpenPackage input_pkg = PackageUtil.open(Path.of(args[0]))) {
+            if (!"false".equals(System.getProperty("import.check"))) {
+                System.err.println("Running checks on package");
+                PackageUtil.check(input_pkg.getDir());
+            }
+
+            BinaryUploader uploader = Boolean.getBoolean("import.upload.streaming")
+                    ? StreamingBinaryUploader.fromSystemProperties()
+                    : BinaryUploader.of(client);
+
+            import_package(client, uploader, input_pkg.getDir());
+        }
+    }
+
+    private static void import_package(PassClient client, BinaryUploader uploader, Path input_dir)
+            throws IOException {
 
         // Map from the original entity id to the entity
         Map<String, PassEntity> entities = new HashMap<>();
 
-        List<String> type_order = List.of("User", "Repository", "Journal", "Publisher", "Policy",
-                "Funder", "Grant", "Publication", "Submission", "RepositoryCopy", "Deposit", "SubmissionEvent", "File");
         Counter total = new Counter();
 
-        for (String type : type_order) {
+        // Null if the package is partitioned or its objects file cannot be indexed
+        ObjectsIndex index = PackageUtil.getObjectsIndex(input_dir);
+
+        for (String type : PackageUtil.TYPE_ORDER) {
             System.err.println("Importing " + type);
 
             Counter count = new Counter();
 
-            PackageUtil.readObjects(input_dir).filter(o -> o.getString("type").equals(type)).forEach(o -> {
-                PassEntity entity = null;
+            try (Stream<JsonObject> objects = index == null ? PackageUtil.readObjectsOfType(input_dir, type)
+                    : PackageUtil.readObjectsOfType(index, type)) {
+                objects.forEach(o -> {
+                    PassEntity entity = null;
 
-                count.value++;
+                    count.value++;
 
-                try {
-                    entity = as_pass_entity(o, entities);
-                    entities.put(entity.getId(), entity);
+                    try {
+                        entity = as_pass_entity(o, entities);
+                        entities.put(entity.getId(), entity);
 
-                    if (type.equals("File")) {
-                        File f = File.class.cast(entity);
-                        URI uri = client.uploadBinary(f.getName(),
-                                PackageUtil.readFileFully(input_dir, f.getUri().getPath()));
+                        if (type.equals("File")) {
+                            File f = File.class.cast(entity);
+                            URI uri = uploader.upload(f.getName(),
+                                    PackageUtil.getFile(input_dir, f.getUri().getPath()));
 
-                        String path = uri.getRawPath();
+                            String path = uri.getRawPath();
 
-                        int i = path.indexOf("/file/");
+                            int i = path.indexOf("/file/");
 
-                        if (i == -1) {
-                            throw new RuntimeException("Malformed file uri: " + f);
-                        }
+                            if (i == -1) {
+                                throw new RuntimeException("Malformed file uri: " + f);
+                            }
 
 
-                        f.setUri(new URI(path.substring(i)));
-                    }
+                            f.setUri(new URI(path.substring(i)));
+                        }
 
-                    client.createObject(entity);
-                } catch (Exception e) {
-                    System.err.println("Error: Failed on json " + o);
-                    if (entity != null) {
-                        System.err.println("Entity: " + entity);
+                        client.createObject(entity);
+                    } catch (Exception e) {
+                        System.err.println("Error: Failed on json " + o);
+                        if (entity != null) {
+                            System.err.println("Entity: " + entity);
+                        }
+                        System.err.println("Exception: " + e.getMessage());
+                        System.exit(1);
                     }
-                    System.err.println("Exception: " + e.getMessage());
-                    System.exit(1);
-                }
-            });
+                });
+            }
 
             total.value += count.value;
             System.err.println("Number imported: " + count.value);
@@ -0,0 +1,38 @@
+package org.eclipse.pass.migration.cli;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.eclipse.pass.migration.PackageUtil;
+
+public class PassPartitionApp {
+    private PassPartitionApp() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: PACKAGE_DIR");
+            System.exit(1);
+        }
+
+        Path package_dir = Path.of(args[0]);
+
+        if (PackageUtil.isZip(package_dir)) {
+            System.err.println("Error! Only a package directory can be converted. "
+                    + "The remediation app can write a partitioned zip.");
+            System.exit(1);
+        }
+
+        if (PackageUtil.isPartitioned(package_dir)) {
+            System.err.println("Package is already partitioned by type");
+            return;
+        }
+
+        System.err.println("Partitioning objects of " + package_dir + " by type");
+        long count = PackageUtil.partitionObjects(package_dir);
+        System.err.println("Objects written: " + count);
+
+        System.err.println("Running checks on package");
+        PackageUtil.check(package_dir);
+    }
+}
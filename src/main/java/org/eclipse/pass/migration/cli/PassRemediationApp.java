@@ -12,22 +12,26 @@ public class PassRemediationApp {
 
     public static void main(String[] args) throws IOException {
         if (args.length != 2) {
-            System.err.println("Usage: INPUT_DIR OUTPUT_DIR");
+            System.err.println("Usage: INPUT_PACKAGE OUTPUT_PACKAGE");
             System.exit(1);
         }
 
-        Path input_dir = Path.of(args[0]);
-        Path output_dir = Path.of(args[1]);
+        Path input = Path.of(args[0]);
+        Path output = Path.of(args[1]);
 
-        System.err.println("Loading " + input_dir);
-        PassRemediator pr = new PassRemediator(input_dir);
+        try (PackageUtil.OpenPackage input_pkg = PackageUtil.open(input)) {
+            System.err.println("Loading " + input);
+            PassRemediator pr = new PassRemediator(input_pkg.getDir());
 
-        pr.run();
+            pr.run();
 
-        System.err.println("Writing " + output_dir);
-        pr.writePackage(output_dir);
+            System.err.println("Writing " + output);
+            pr.writePackage(output);
+        }
 
-        System.err.println("Running checks on package");
-        PackageUtil.check(output_dir);
+        try (PackageUtil.OpenPackage output_pkg = PackageUtil.open(output)) {
+            System.err.println("Running checks on package");
+            PackageUtil.check(output_pkg.getDir());
+        }
     }
 }
@@ -0,0 +1,93 @@
+package org.eclipse.pass.migration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class BinaryStoreTest {
+    @TempDir
+    Path dir;
+
+    private static BinaryStore.Entry write(BinaryStore store, String path, String content) throws IOException {
+        return store.write(path, new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), "etag-" + path,
+                null);
+    }
+
+    private Path index_file() {
+        return dir.resolve("files-index.ndjson");
+    }
+
+    @Test
+    public void testWriteAndReadIndex() throws IOException {
+        BinaryStore.Entry entry;
+
+        try (BinaryStore store = BinaryStore.open(dir)) {
+            entry = write(store, "/a/b.txt", "hello");
+        }
+
+        assertEquals("hello", Files.readString(PackageUtil.getFile(dir, "/a/b.txt")));
+        assertEquals(5, entry.size);
+        assertEquals("2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824", entry.sha256);
+
+        Map<String, BinaryStore.Entry> index = BinaryStore.readIndex(dir);
+
+        assertEquals(1, index.size());
+        assertEquals(entry.sha256, index.get("/a/b.txt").sha256);
+        assertEquals("etag-/a/b.txt", index.get("/a/b.txt").etag);
+    }
+
+    // An export interrupted while an entry was appended leaves part of a line
+    @Test
+    public void testResumeAfterPartialLine() throws IOException {
+        try (BinaryStore store = BinaryStore.open(dir)) {
+            write(store, "/a", "first");
+        }
+
+        Files.writeString(index_file(), "{\"path\":\"/b\",\"si", StandardOpenOption.APPEND);
+
+        assertEquals(1, BinaryStore.readIndex(dir).size());
+
+        try (BinaryStore store = BinaryStore.open(dir)) {
+            assertTrue(store.get("/a") != null);
+            write(store, "/c", "third");
+        }
+
+        Map<String, BinaryStore.Entry> index = BinaryStore.readIndex(dir);
+
+        assertEquals(2, index.size());
+        assertEquals(5, index.get("/c").size);
+        assertEquals(2, Files.readAllLines(index_file()).size());
+    }
+
+    @Test
+    public void testResumeAfterOnlyPartialLine() throws IOException {
+        Files.writeString(index_file(), "{\"path\":");
+
+        try (BinaryStore store = BinaryStore.open(dir)) {
+            write(store, "/a", "first");
+        }
+
+        assertEquals(1, BinaryStore.readIndex(dir).size());
+    }
+
+    @Test
+    public void testPartialFilesDeleted() throws IOException {
+        Path partial = Files.createDirectories(PackageUtil.getPartialFilesDir(dir)).resolve("binary1.part");
+        Files.writeString(partial, "junk");
+
+        BinaryStore.open(dir).close();
+
+        assertFalse(Files.exists(partial));
+    }
+}
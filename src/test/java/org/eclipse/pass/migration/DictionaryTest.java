@@ -0,0 +1,72 @@
+package org.eclipse.pass.migration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+public class DictionaryTest {
+    @Test
+    public void testEncodeDecode() {
+        Dictionary dict = new Dictionary();
+
+        assertEquals(0, dict.size());
+        assertEquals(-1, dict.find("a"));
+
+        assertEquals(0, dict.encode("a"));
+        assertEquals(1, dict.encode("b"));
+        assertEquals(0, dict.encode("a"));
+        assertEquals(2, dict.encode(""));
+
+        assertEquals(3, dict.size());
+        assertEquals(1, dict.find("b"));
+        assertEquals(-1, dict.find("c"));
+
+        assertEquals("a", dict.decode(0));
+        assertEquals("b", dict.decode(1));
+        assertEquals("", dict.decode(2));
+    }
+
+    @Test
+    public void testUnknownCode() {
+        Dictionary dict = new Dictionary();
+        dict.encode("a");
+
+        assertThrows(IllegalArgumentException.class, () -> dict.decode(1));
+        assertThrows(IllegalArgumentException.class, () -> dict.decode(-1));
+    }
+
+    // Strings with the same hash code collide in the table
+    @Test
+    public void testCollisions() {
+        Dictionary dict = new Dictionary();
+
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        assertEquals(0, dict.encode("Aa"));
+        assertEquals(1, dict.encode("BB"));
+        assertEquals(0, dict.find("Aa"));
+        assertEquals(1, dict.find("BB"));
+    }
+
+    // Grows the string array and table many times
+    @Test
+    public void testResize() {
+        Dictionary dict = new Dictionary();
+        int count = 100000;
+
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, dict.encode("id" + i));
+        }
+
+        assertEquals(count, dict.size());
+
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, dict.encode("id" + i));
+            assertEquals(i, dict.find("id" + i));
+            assertEquals("id" + i, dict.decode(i));
+        }
+
+        assertEquals(count, dict.size());
+        assertEquals(-1, dict.find("id" + count));
+    }
+}
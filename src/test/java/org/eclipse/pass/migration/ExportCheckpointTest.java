@@ -0,0 +1,101 @@
+package org.eclipse.pass.migration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ExportCheckpointTest {
+    @TempDir
+    Path dir;
+
+    private static ExportCheckpoint.Slice slice(int index) {
+        JsonObject query = Json.createObjectBuilder()
+                .add("slice", Json.createObjectBuilder().add("id", index).add("max", 2)).build();
+
+        return new ExportCheckpoint.Slice(index, query);
+    }
+
+    private static void assert_slice(ExportCheckpoint.Slice expected, ExportCheckpoint.Slice actual) {
+        assertEquals(expected.index, actual.index);
+        assertEquals(expected.query, actual.query);
+        assertEquals(expected.last, actual.last);
+        assertEquals(expected.total, actual.total);
+        assertEquals(expected.count, actual.count);
+        assertEquals(expected.done, actual.done);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        assertNull(ExportCheckpoint.load(dir));
+
+        List<ExportCheckpoint.Slice> slices = List.of(slice(0), slice(1));
+        ExportCheckpoint checkpoint = ExportCheckpoint.create(dir, slices, 1000);
+
+        ExportCheckpoint loaded = ExportCheckpoint.load(dir);
+
+        assertEquals(1000, loaded.getTotal());
+        assertEquals(0, loaded.getObjectsOffset());
+        assertFalse(loaded.isComplete());
+        assert_slice(slices.get(0), loaded.getSlices().get(0));
+        assertNull(loaded.getSlices().get(0).last);
+        assertEquals(-1, loaded.getSlices().get(0).total);
+
+        // A slice part way through and one which is done
+        slices.get(0).last = Json.createArrayBuilder().add(1700000000000L).add("id-\u00e9").build();
+        slices.get(0).total = 600;
+        slices.get(0).count = 250;
+        slices.get(1).last = Json.createArrayBuilder().add(1).build();
+        slices.get(1).total = 400;
+        slices.get(1).count = 400;
+        slices.get(1).done = true;
+
+        checkpoint.commit(123456789012L);
+        loaded = ExportCheckpoint.load(dir);
+
+        assertEquals(123456789012L, loaded.getObjectsOffset());
+        assertEquals(2, loaded.getSlices().size());
+        assert_slice(slices.get(0), loaded.getSlices().get(0));
+        assert_slice(slices.get(1), loaded.getSlices().get(1));
+
+        checkpoint.complete();
+
+        assertTrue(ExportCheckpoint.load(dir).isComplete());
+
+        // Only the checkpoint is left in the package
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(List.of("export-checkpoint.json"),
+                    files.map(f -> f.getFileName().toString()).collect(Collectors.toList()));
+        }
+    }
+
+    // Creating a checkpoint replaces a previous one
+    @Test
+    public void testCreateReplaces() throws IOException {
+        ExportCheckpoint.Slice old = slice(0);
+        old.count = 10;
+
+        ExportCheckpoint.create(dir, List.of(old, slice(1), slice(2)), 10).complete();
+        ExportCheckpoint.create(dir, List.of(slice(0)), 5);
+
+        ExportCheckpoint loaded = ExportCheckpoint.load(dir);
+
+        assertEquals(5, loaded.getTotal());
+        assertFalse(loaded.isComplete());
+        assertEquals(1, loaded.getSlices().size());
+        assertEquals(0, loaded.getSlices().get(0).count);
+    }
+}
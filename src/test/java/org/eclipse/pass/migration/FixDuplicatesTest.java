@@ -0,0 +1,82 @@
+package org.eclipse.pass.migration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Remediates a package of Publications in which every CHAIN_SPACING-th group of
+// four is a chain of duplicates linked by doi, then pmid, then title, so no
+// single key is shared by the whole chain. The number of Publications can be
+// raised to time a large package, for example:
+// mvn test -Dtest=FixDuplicatesTest -Dbenchmark.objects=1000000
+public class FixDuplicatesTest {
+    private static final int CHAIN_SPACING = 1000;
+
+    @TempDir
+    Path dir;
+
+    private static JsonObject publication(int i) {
+        int chain = i % CHAIN_SPACING;
+        int base = i - chain;
+
+        String doi = "10.1000/" + i;
+        String pmid = "" + i;
+        String title = "Title of publication " + i;
+
+        // Links 0-1 by doi, 1-2 by pmid and 2-3 by title
+        if (chain == 1) {
+            doi = "10.1000/" + base;
+        } else if (chain == 2) {
+            pmid = "" + (base + 1);
+        } else if (chain == 3) {
+            title = "Title of publication " + (base + 2);
+        }
+
+        return Json.createObjectBuilder().add("id", "publication" + i).add("type", "Publication")
+                .add("title", title).add("doi", doi).add("pmid", pmid).build();
+    }
+
+    @Test
+    public void testFixDuplicates() throws IOException {
+        int count = Integer.getInteger("benchmark.objects", 20000);
+        Path pkg = TestPackages.create(dir.resolve("input"),
+                IntStream.range(0, count).mapToObj(FixDuplicatesTest::publication));
+
+        long start = System.currentTimeMillis();
+        PassRemediator pr = new PassRemediator(pkg);
+        long load_ms = System.currentTimeMillis() - start;
+
+        int chains = (count + CHAIN_SPACING - 4) / CHAIN_SPACING;
+
+        assertEquals(chains, pr.getDuplicateSets().size());
+        pr.getDuplicateSets().forEach(set -> assertEquals(4, set.size()));
+
+        start = System.currentTimeMillis();
+        pr.run();
+        long run_ms = System.currentTimeMillis() - start;
+
+        Map<String, JsonObject> objects = pr.getObjects();
+
+        // One of each chain is kept along with every other Publication
+        assertEquals(count - 3 * chains, objects.size());
+
+        for (int i = 0; i < count; i++) {
+            if (i % CHAIN_SPACING >= 4) {
+                assertTrue(objects.containsKey("publication" + i));
+            }
+        }
+
+        System.err.println("Publications: " + count + ", chains of duplicates: " + chains + ". Load: " + load_ms
+                + " ms, remediation: " + run_ms + " ms");
+    }
+}
@@ -0,0 +1,111 @@
+package org.eclipse.pass.migration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+import javax.json.Json;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ManifestTest {
+    @TempDir
+    Path dir;
+
+    private static String sha256(byte[] data) throws NoSuchAlgorithmException {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        List<BinaryStore.Entry> entries = List.of(new BinaryStore.Entry("/b/c d.txt", 1, "AA", null, null),
+                new BinaryStore.Entry("/a/100%.pdf", 2, "bb", null, null),
+                new BinaryStore.Entry("a/line\r\nbreak", 3, "cc", null, null));
+
+        Manifest.write(dir, entries);
+
+        // Sorted by path with CR, LF and % encoded
+        assertEquals("bb  files/a/100%25.pdf\ncc  files/a/line%0D%0Abreak\nAA  files/b/c d.txt\n",
+                Files.readString(Manifest.getFile(dir)));
+
+        assertEquals(Map.of("b/c d.txt", "aa", "a/100%.pdf", "bb", "a/line\r\nbreak", "cc"), Manifest.read(dir));
+        assertEquals("a/100%.pdf", Manifest.key("/a/100%.pdf"));
+        assertFalse(Files.exists(dir.resolve("manifest-sha256.txt.tmp")));
+    }
+
+    @Test
+    public void testReadOther() throws IOException {
+        assertTrue(Manifest.read(dir).isEmpty());
+
+        // Any whitespace separates the digest and path
+        Files.writeString(Manifest.getFile(dir), "AB\tfiles/x%250A\n\ncd files/y z\n");
+
+        assertEquals(Map.of("x%0A", "ab", "y z", "cd"), Manifest.read(dir));
+
+        Files.writeString(Manifest.getFile(dir), "ab other/x\n");
+
+        assertThrows(IOException.class, () -> Manifest.read(dir));
+    }
+
+    // The digest returned while a binary is written is of its content
+    @Test
+    public void testWriteFileDigest() throws IOException, NoSuchAlgorithmException {
+        byte[] data = "hello\n\u00e9".repeat(10000).getBytes(StandardCharsets.UTF_8);
+        String expected = sha256(data);
+
+        assertEquals(expected, PackageUtil.writeFile(dir, "/a/b.bin", new ByteArrayInputStream(data)));
+        assertEquals(expected, PackageUtil.digestFile(PackageUtil.getFile(dir, "/a/b.bin")));
+
+        Path zip = dir.resolve("package.zip");
+
+        try (FileSystem fs = FileSystems.newFileSystem(zip, Map.of("create", "true"))) {
+            assertEquals(expected, PackageUtil.writeFile(fs.getPath("/"), "c.bin", new ByteArrayInputStream(data)));
+        }
+
+        try (FileSystem fs = FileSystems.newFileSystem(zip)) {
+            assertEquals(expected, PackageUtil.digestFile(PackageUtil.getFile(fs.getPath("/"), "c.bin")));
+        }
+    }
+
+    // A binary which does not match the manifest written by the binary store
+    // fails validation
+    @Test
+    public void testValidate() throws IOException {
+        Path pkg = dir.resolve("package");
+        PackageUtil.initPackage(pkg);
+        PackageUtil.writeObjects(pkg, List.of(Json.createObjectBuilder().add("id", "file1").add("type", "File")
+                .add("name", "a%b.txt").add("uri", "/x/a%b.txt").build()).stream());
+
+        try (BinaryStore store = BinaryStore.open(pkg)) {
+            store.write("/x/a%b.txt", new ByteArrayInputStream("content".getBytes(StandardCharsets.UTF_8)), null,
+                    null);
+        }
+
+        assertEquals(1, Manifest.read(pkg).size());
+        assertTrue(Manifest.read(pkg).containsKey("x/a%b.txt"));
+
+        PackageValidator.Report report = PackageValidator.validate(pkg, 1);
+
+        assertEquals(List.of(), report.getErrors());
+        assertEquals(1, report.getBinaryCount());
+
+        Files.writeString(PackageUtil.getFile(pkg, "/x/a%b.txt"), "changed");
+
+        assertFalse(PackageValidator.validate(pkg, 1).isValid());
+    }
+}
@@ -0,0 +1,161 @@
+package org.eclipse.pass.migration;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.Test;
+
+public class ObjectStoreTest {
+    private static JsonObject parse(String s) {
+        return Json.createReader(new StringReader(s.replace('\'', '"'))).readObject();
+    }
+
+    // One object of each type with a property of every kind
+    private static final List<JsonObject> objects = List.of(
+            parse("{'id':'sub1','type':'Submission','submitted':true,'source':'pass','publication':'pub1',"
+                    + "'submitter':'user1','grants':['grant1','grant2'],'preparers':[]}"),
+            parse("{'id':'user1','type':'User','firstName':'Ann','locatorIds':['a:1','b:2'],"
+                    + "'roles':['submitter']}"),
+            parse("{'id':'journal1','type':'Journal','journalName':'J','issns':['Print:1234-5678']}"),
+            parse("{'id':'repo1','type':'Repository','name':'R','schemas':['https://example.org/schema']}"),
+            parse("{'id':'copy1','type':'RepositoryCopy','externalIds':['e1'],'repository':'repo1',"
+                    + "'publication':'pub1'}"),
+            parse("{'id':'grant1','type':'Grant','awardNumber':'A1','pi':'user1','coPis':['user1','user2']}"));
+
+    private static ObjectStore create_store() {
+        ObjectStore store = new ObjectStore();
+
+        objects.forEach(o -> store.add(o, UnaryOperator.identity()));
+        store.compact();
+
+        return store;
+    }
+
+    @Test
+    public void testRoundTrip() {
+        ObjectStore store = create_store();
+
+        assertEquals(objects.size(), store.size());
+
+        // The id of the grant is seen as a target before the journal is added
+        assertEquals(List.of(objects.get(0), objects.get(1), objects.get(5), objects.get(2), objects.get(3),
+                objects.get(4)), store.objects().collect(Collectors.toList()));
+
+        // Properties keep their order
+        objects.forEach(o -> assertEquals(o.toString(), store.get(store.find(o.getString("id"))).toString()));
+    }
+
+    @Test
+    public void testGetValues() {
+        ObjectStore store = create_store();
+        int sub = store.find("sub1");
+
+        assertEquals("Submission", store.getType(sub));
+        assertEquals("pass", store.getString(sub, "source"));
+        assertEquals("pub1", store.getString(sub, "publication"));
+        assertEquals(objects.get(0).getJsonArray("grants"), store.getArray(sub, "grants"));
+        assertThrows(ClassCastException.class, () -> store.getString(sub, "grants"));
+        assertThrows(ClassCastException.class, () -> store.getArray(sub, "source"));
+        assertNull(store.getString(sub, "submissionStatus"));
+
+        int user = store.find("user1");
+
+        assertEquals(objects.get(1).getJsonArray("locatorIds"), store.getArray(user, "locatorIds"));
+        assertEquals(objects.get(1).getJsonArray("roles"), store.getArray(user, "roles"));
+    }
+
+    // Lists of strings which are not relations must not make their values ids
+    @Test
+    public void testNonRelationLists() {
+        ObjectStore store = create_store();
+
+        assertEquals(-1, store.find("a:1"));
+        assertEquals(-1, store.find("submitter"));
+        assertEquals(-1, store.find("Print:1234-5678"));
+        assertEquals(-1, store.find("https://example.org/schema"));
+        assertEquals(-1, store.find("e1"));
+
+        assertTrue(store.find("grant2") != -1);
+        assertFalse(store.contains(store.find("grant2")));
+    }
+
+    @Test
+    public void testUpdate() {
+        ObjectStore store = create_store();
+        int sub = store.find("sub1");
+
+        store.put(sub, "source", "other");
+        store.put(sub, "submissionStatus", "submitted");
+        store.put(sub, "publication", "pub2");
+        store.put(sub, "preparers", Json.createArrayBuilder().add("user1").build());
+        store.replaceTarget(sub, "grants", store.find("grant2"), store.find("grant1"));
+
+        JsonObject expected = Json.createObjectBuilder(objects.get(0)).add("source", "other")
+                .add("publication", "pub2").add("preparers", Json.createArrayBuilder().add("user1"))
+                .add("grants", Json.createArrayBuilder().add("grant1").add("grant1"))
+                .add("submissionStatus", "submitted").build();
+
+        assertEquals(expected.toString(), store.get(sub).toString());
+        assertEquals("[sub1 submitter user1, grant1 pi user1, grant1 coPis user1, sub1 preparers user1]",
+                store.getRelationsTo(store.find("user1")).toString());
+        assertEquals("[copy1 publication pub1]", store.getRelationsTo(store.find("pub1")).toString());
+        assertFalse(store.isTarget(store.find("grant2")));
+        assertTrue(store.isTarget(store.find("pub2")));
+    }
+
+    @Test
+    public void testRenameOnAdd() {
+        ObjectStore store = new ObjectStore();
+        store.renameOnAdd("Journal", "name", "journalName");
+        store.renameOnAdd("Journal", "title", "nlmta");
+
+        int id = store.add(parse("{'id':'j','type':'Journal','name':'J','issns':[],'nlmta':'N','title':'T'}"),
+                UnaryOperator.identity());
+
+        assertEquals(parse("{'id':'j','type':'Journal','issns':[],'nlmta':'T','journalName':'J'}").toString(),
+                store.get(id).toString());
+    }
+
+    @Test
+    public void testRemoveAndIdsOfType() {
+        ObjectStore store = create_store();
+
+        store.remove(store.find("user1"));
+
+        assertEquals(objects.size() - 1, store.size());
+        assertFalse(store.contains(store.find("user1")));
+        assertEquals(0, store.getIdsOfType("User").length);
+        assertThrows(IllegalArgumentException.class, () -> store.get(store.find("user1")));
+
+        int user = store.add(objects.get(1), UnaryOperator.identity());
+
+        assertEquals(objects.get(1), store.get(user));
+        assertEquals(1, store.getIdsOfType("User").length);
+        assertEquals(0, store.getIdsOfType("Deposit").length);
+
+        // An id replaced by an object of another type and then of the first
+        // type again is listed once
+        store.add(parse("{'id':'user1','type':'Journal','journalName':'K'}"), UnaryOperator.identity());
+
+        assertEquals(0, store.getIdsOfType("User").length);
+        assertArrayEquals(new int[] { store.find("journal1"), user }, store.getIdsOfType("Journal"));
+
+        store.add(objects.get(1), UnaryOperator.identity());
+
+        assertArrayEquals(new int[] { user }, store.getIdsOfType("User"));
+        assertArrayEquals(new int[] { store.find("journal1") }, store.getIdsOfType("Journal"));
+        assertEquals(objects.size(), store.size());
+    }
+}
@@ -0,0 +1,139 @@
+package org.eclipse.pass.migration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ObjectsIndexTest {
+    @TempDir
+    Path dir;
+
+    private static JsonObject parse(String s) {
+        return Json.createReader(new StringReader(s.replace('\'', '"'))).readObject();
+    }
+
+    private static final List<JsonObject> objects = List.of(
+            parse("{'id':'user1','type':'User','firstName':'Ann','roles':['submitter']}"),
+            parse("{'id':'journal1','type':'Journal','journalName':'J\u00e9\u4e2d'}"),
+            parse("{'id':'user2','type':'User','firstName':'Bob','roles':[]}"),
+            parse("{'id':'grant1','type':'Grant','awardNumber':'A1','pi':'user1','coPis':['user2']}"));
+
+    private static final JsonObject added = parse("{'id':'journal2','type':'Journal','journalName':'K'}");
+
+    private Path create_package() throws IOException {
+        Path pkg = dir.resolve("package");
+        PackageUtil.initPackage(pkg);
+        PackageUtil.writeObjects(pkg, objects.stream());
+
+        return pkg;
+    }
+
+    private static List<JsonObject> read_type(ObjectsIndex index, String type) throws IOException {
+        try (Stream<JsonObject> s = index.readObjectsOfType(type)) {
+            return s.collect(Collectors.toList());
+        }
+    }
+
+    private static void check(ObjectsIndex index, List<JsonObject> expected) throws IOException {
+        assertEquals(expected.size(), index.size());
+
+        for (JsonObject o : expected) {
+            assertEquals(o, index.readObject(o.getString("id")));
+            assertEquals(o.getString("type"), index.get(o.getString("id")).type);
+        }
+
+        assertNull(index.readObject("missing"));
+        assertNull(index.get("missing"));
+    }
+
+    // Writing the objects of a package writes their index
+    @Test
+    public void testWriteObjects() throws IOException {
+        Path pkg = create_package();
+
+        assertTrue(Files.isRegularFile(ObjectsIndex.getFile(pkg)));
+
+        ObjectsIndex index = ObjectsIndex.load(pkg);
+
+        assertNotNull(index);
+        check(index, objects);
+        assertEquals(Set.of("User", "Journal", "Grant"), index.getTypes());
+    }
+
+    @Test
+    public void testBuild() throws IOException {
+        Path pkg = create_package();
+        Files.delete(ObjectsIndex.getFile(pkg));
+
+        assertNull(ObjectsIndex.load(pkg));
+
+        check(ObjectsIndex.build(pkg), objects);
+        check(ObjectsIndex.load(pkg), objects);
+    }
+
+    @Test
+    public void testReadObjectsOfType() throws IOException {
+        Path pkg = create_package();
+        ObjectsIndex index = PackageUtil.getObjectsIndex(pkg);
+
+        assertEquals(List.of(objects.get(0), objects.get(2)), read_type(index, "User"));
+        assertEquals(List.of(objects.get(3)), read_type(index, "Grant"));
+        assertEquals(List.of(), read_type(index, "Deposit"));
+
+        try (Stream<JsonObject> s = PackageUtil.readObjectsOfType(pkg, "Journal")) {
+            assertEquals(List.of(objects.get(1)), s.collect(Collectors.toList()));
+        }
+    }
+
+    // An objects file changed after it was indexed has a different size
+    @Test
+    public void testStaleSize() throws IOException {
+        Path pkg = create_package();
+        Path objects_file = PackageUtil.getObjectsFile(pkg);
+        FileTime modified = Files.getLastModifiedTime(objects_file);
+
+        Files.writeString(objects_file, added.toString() + "\n", StandardOpenOption.APPEND);
+        Files.setLastModifiedTime(objects_file, modified);
+
+        assertNull(ObjectsIndex.load(pkg));
+
+        ObjectsIndex index = PackageUtil.getObjectsIndex(pkg);
+
+        check(index, Stream.concat(objects.stream(), Stream.of(added)).collect(Collectors.toList()));
+        assertEquals(List.of(objects.get(1), added), read_type(index, "Journal"));
+        assertNotNull(ObjectsIndex.load(pkg));
+    }
+
+    // An objects file rewritten with the same size has a different time
+    @Test
+    public void testStaleModifiedTime() throws IOException {
+        Path pkg = create_package();
+        Path objects_file = PackageUtil.getObjectsFile(pkg);
+        FileTime modified = Files.getLastModifiedTime(objects_file);
+        String text = Files.readString(objects_file).replace("Ann", "Amy");
+
+        Files.writeString(objects_file, text);
+        Files.setLastModifiedTime(objects_file, FileTime.fromMillis(modified.toMillis() + 2000));
+
+        assertNull(ObjectsIndex.load(pkg));
+        assertEquals("Amy", PackageUtil.getObjectsIndex(pkg).readObject("user1").getString("firstName"));
+    }
+}
@@ -0,0 +1,208 @@
+package org.eclipse.pass.migration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.stream.JsonParsingException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ObjectsReaderTest {
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    @TempDir
+    Path dir;
+
+    private static JsonObject object(int i, String value) {
+        return Json.createObjectBuilder().add("id", "journal" + i).add("type", "Journal").add("journalName", value)
+                .build();
+    }
+
+    // Objects of varying length, some with multibyte characters, filling
+    // several chunks
+    private static List<JsonObject> create_objects() {
+        List<JsonObject> result = new ArrayList<>();
+        int size = 0;
+
+        for (int i = 0; size < 3 * CHUNK_SIZE; i++) {
+            String value = "x".repeat(i % 300) + (i % 3 == 0 ? "\u00e9\u4e2d\ud83d\ude00" : "");
+            JsonObject o = object(i, value);
+
+            result.add(o);
+            size += o.toString().getBytes(StandardCharsets.UTF_8).length + 1;
+        }
+
+        return result;
+    }
+
+    private Path write(List<JsonObject> objects, boolean trailing_newline) throws IOException {
+        Path file = dir.resolve("objects.ndjson");
+        String text = objects.stream().map(JsonObject::toString).collect(Collectors.joining("\n"));
+
+        Files.writeString(file, trailing_newline ? text + "\n" : text);
+
+        return file;
+    }
+
+    private static List<JsonObject> read(Path file, boolean ordered) throws IOException {
+        try (Stream<JsonObject> s = ObjectsReader.read(file, ordered)) {
+            assertEquals(!ordered, s.isParallel());
+
+            return s.collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void testChunks() throws IOException {
+        List<JsonObject> objects = create_objects();
+        Path file = write(objects, true);
+        List<ObjectsReader.Chunk> chunks = ObjectsReader.mapChunks(file);
+        long offset = 0;
+
+        assertTrue(chunks.size() > 2);
+
+        for (ObjectsReader.Chunk c : chunks) {
+            assertEquals(offset, c.offset);
+            assertEquals('\n', c.bytes.get(c.bytes.limit() - 1));
+
+            offset += c.bytes.limit();
+        }
+
+        assertEquals(Files.size(file), offset);
+    }
+
+    @Test
+    public void testReadOrdered() throws IOException {
+        List<JsonObject> objects = create_objects();
+
+        assertEquals(objects, read(write(objects, true), true));
+    }
+
+    @Test
+    public void testReadUnordered() throws IOException {
+        List<JsonObject> objects = create_objects();
+        List<JsonObject> result = read(write(objects, true), false);
+
+        assertEquals(objects.size(), result.size());
+        assertEquals(new HashSet<>(objects), new HashSet<>(result));
+    }
+
+    @Test
+    public void testNoTrailingNewline() throws IOException {
+        List<JsonObject> objects = create_objects();
+        Path file = write(objects, false);
+
+        assertEquals(objects, read(file, true));
+        assertEquals(new HashSet<>(objects), new HashSet<>(read(file, false)));
+
+        List<ObjectsReader.Chunk> chunks = ObjectsReader.mapChunks(file);
+        ObjectsReader.Chunk last = chunks.get(chunks.size() - 1);
+
+        assertEquals(Files.size(file), last.offset + last.bytes.limit());
+    }
+
+    // A character of three bytes starts just before the chunk size, so a
+    // chunk ending there would split it
+    @Test
+    public void testMultibyteAtChunkBoundary() throws IOException {
+        String prefix = object(0, "").toString();
+        prefix = prefix.substring(0, prefix.length() - 2);
+        int filler = CHUNK_SIZE - 1 - prefix.length();
+
+        JsonObject first = object(0, "x".repeat(filler) + "\u4e2d".repeat(10));
+        List<JsonObject> objects = List.of(first, object(1, "\u4e2d"), object(2, "y"));
+        Path file = write(objects, true);
+
+        byte[] bytes = Files.readAllBytes(file);
+        assertEquals((byte) 0xe4, bytes[CHUNK_SIZE - 1]);
+
+        List<ObjectsReader.Chunk> chunks = ObjectsReader.mapChunks(file);
+
+        // The first chunk is extended to the end of the first line
+        assertEquals(2, chunks.size());
+        assertEquals(first.toString().getBytes(StandardCharsets.UTF_8).length + 1, chunks.get(0).bytes.limit());
+        assertEquals(objects, read(file, true));
+        assertEquals(new HashSet<>(objects), new HashSet<>(read(file, false)));
+    }
+
+    // A line longer than twice the chunk size is mapped to its end
+    @Test
+    public void testLongLine() throws IOException {
+        List<JsonObject> objects = List.of(object(0, "a"), object(1, "\u00e9".repeat(3 * CHUNK_SIZE / 2)),
+                object(2, "b"));
+        Path file = write(objects, true);
+
+        assertEquals(2, ObjectsReader.mapChunks(file).size());
+        assertEquals(objects, read(file, true));
+    }
+
+    @Test
+    public void testEmptyFile() throws IOException {
+        Path file = write(List.of(), false);
+
+        assertTrue(ObjectsReader.mapChunks(file).isEmpty());
+        assertTrue(read(file, true).isEmpty());
+    }
+
+    @Test
+    public void testReadZip() throws IOException {
+        List<JsonObject> objects = create_objects();
+        String text = objects.stream().map(JsonObject::toString).collect(Collectors.joining("\n", "", "\n"));
+        Path zip = dir.resolve("package.zip");
+
+        try (FileSystem fs = FileSystems.newFileSystem(zip, Map.of("create", "true"))) {
+            Files.writeString(fs.getPath("objects.ndjson"), text);
+        }
+
+        try (FileSystem fs = FileSystems.newFileSystem(zip)) {
+            assertEquals(objects, read(fs.getPath("objects.ndjson"), true));
+        }
+    }
+
+    @Test
+    public void testReadReader() {
+        List<JsonObject> objects = create_objects();
+        String text = objects.stream().map(JsonObject::toString).collect(Collectors.joining("\n"));
+
+        try (Stream<JsonObject> s = ObjectsReader.read(new BufferedReader(new StringReader(text)))) {
+            assertFalse(s.isParallel());
+            assertEquals(objects, s.collect(Collectors.toList()));
+        }
+    }
+
+    // Blank lines are an error as they were when each line was parsed on its own
+    @Test
+    public void testBlankLine() throws IOException {
+        String text = object(0, "a") + "\n\n" + object(1, "b") + "\n";
+        Path file = dir.resolve("objects.ndjson");
+        Files.writeString(file, text);
+
+        assertThrows(JsonParsingException.class, () -> read(file, true));
+        assertThrows(JsonParsingException.class, () -> read(file, false));
+        assertThrows(JsonParsingException.class, () -> {
+            try (Stream<JsonObject> s = ObjectsReader.read(new BufferedReader(new StringReader(text)))) {
+                s.count();
+            }
+        });
+    }
+}
@@ -0,0 +1,116 @@
+package org.eclipse.pass.migration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ObjectsSorterTest {
+    @TempDir
+    Path dir;
+
+    // Objects of known and unknown types in a random order
+    private static List<JsonObject> create_objects(int count) {
+        List<String> types = new ArrayList<>(PackageUtil.TYPE_ORDER);
+        types.add("Zebra");
+        types.add("Aardvark");
+
+        List<JsonObject> result = new ArrayList<>();
+        Random random = new Random(1);
+
+        for (int i = 0; i < count; i++) {
+            String type = types.get(random.nextInt(types.size()));
+
+            result.add(Json.createObjectBuilder().add("id", "id" + random.nextInt(1000000) + "-" + i)
+                    .add("type", type).add("value", "v\u00e9" + i).build());
+        }
+
+        return result;
+    }
+
+    private List<JsonObject> sort(List<JsonObject> objects, int run_size, Comparator<JsonObject> order,
+            int expected_spills) throws IOException {
+        try (ObjectsSorter sorter = new ObjectsSorter(dir, run_size, order)) {
+            sorter.addAll(objects.stream());
+
+            assertEquals(expected_spills, sorter.getSpilledRuns());
+
+            try (Stream<JsonObject> s = sorter.sorted()) {
+                return s.collect(Collectors.toList());
+            }
+        }
+    }
+
+    private static List<JsonObject> expected(List<JsonObject> objects, Comparator<JsonObject> order) {
+        List<JsonObject> result = new ArrayList<>(objects);
+        result.sort(order);
+
+        return result;
+    }
+
+    private void check(List<JsonObject> objects, int run_size, int expected_spills) throws IOException {
+        for (Comparator<JsonObject> order : List.of(ObjectsSorter.ORDER, ObjectsSorter.BY_ID)) {
+            assertEquals(expected(objects, order), sort(objects, run_size, order, expected_spills));
+        }
+
+        // Temporary files are removed on close
+        try (Stream<Path> s = Files.list(dir)) {
+            assertEquals(0, s.count());
+        }
+    }
+
+    @Test
+    public void testInMemory() throws IOException {
+        check(create_objects(500), 1000, 0);
+    }
+
+    @Test
+    public void testSpilled() throws IOException {
+        check(create_objects(1000), 7, 142);
+    }
+
+    // The last run is spilled too, so none is left in memory
+    @Test
+    public void testSpilledExactRuns() throws IOException {
+        check(create_objects(1000), 10, 100);
+    }
+
+    @Test
+    public void testSingleObjectRuns() throws IOException {
+        check(create_objects(50), 1, 50);
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        check(Collections.emptyList(), 10, 0);
+    }
+
+    @Test
+    public void testOrder() {
+        List<JsonObject> objects = List.of(
+                Json.createObjectBuilder().add("id", "a").add("type", "Zebra").build(),
+                Json.createObjectBuilder().add("id", "b").add("type", "Submission").build(),
+                Json.createObjectBuilder().add("id", "c").add("type", "Aardvark").build(),
+                Json.createObjectBuilder().add("id", "d").add("type", "User").build(),
+                Json.createObjectBuilder().add("id", "a").add("type", "User").build());
+
+        assertEquals(List.of(objects.get(4), objects.get(3), objects.get(1), objects.get(2), objects.get(0)),
+                expected(objects, ObjectsSorter.ORDER));
+        assertThrows(IllegalArgumentException.class, () -> new ObjectsSorter(dir, 0));
+    }
+}
@@ -0,0 +1,72 @@
+package org.eclipse.pass.migration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.Test;
+
+public class ObjectsWriterTest {
+    private static JsonObject object(String id, String value) {
+        return Json.createObjectBuilder().add("id", id).add("type", "Journal").add("journalName", value).build();
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        JsonObject o1 = object("j1", "Line\nbreak \u00e9\u4e2d\ud83d\ude00");
+        JsonObject o2 = object("j2", "x");
+
+        try (ObjectsWriter out = new ObjectsWriter(Channels.newChannel(bytes))) {
+            int length = out.write(o1);
+
+            assertEquals(o1.toString().getBytes(StandardCharsets.UTF_8).length, length);
+            assertEquals(length + 1, out.position());
+
+            out.writeLine(o2.toString());
+        }
+
+        assertEquals(o1.toString() + "\n" + o2.toString() + "\n", bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    // A string with an unpaired surrogate is written with a replacement
+    // character as a PrintWriter would
+    @Test
+    public void testUnpairedSurrogate() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (ObjectsWriter out = new ObjectsWriter(Channels.newChannel(bytes))) {
+            assertEquals(object("j1", "a?b").toString().length(), out.write(object("j1", "a\ud800b")));
+            out.write(object("j2", "\udc00"));
+        }
+
+        assertEquals(object("j1", "a?b").toString() + "\n" + object("j2", "?").toString() + "\n",
+                bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    // Lines longer than the byte buffer with multibyte characters across its end
+    @Test
+    public void testLongLines() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        StringBuilder expected = new StringBuilder();
+
+        try (ObjectsWriter out = new ObjectsWriter(Channels.newChannel(bytes), 10)) {
+            for (int i = 0; i < 5; i++) {
+                JsonObject o = object("j" + i, "\u00e9".repeat(40000 + i) + "\ud83d\ude00".repeat(i));
+
+                out.write(o);
+                expected.append(o.toString()).append('\n');
+            }
+
+            assertEquals(10 + expected.toString().getBytes(StandardCharsets.UTF_8).length, out.position());
+        }
+
+        assertEquals(expected.toString(), bytes.toString(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,201 @@
+package org.eclipse.pass.migration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PackageDiffTest {
+    @TempDir
+    Path dir;
+
+    private static JsonObject parse(String s) {
+        return Json.createReader(new StringReader(s.replace('\'', '"'))).readObject();
+    }
+
+    private static JsonObject file(String id, String uri, String name) {
+        return parse("{'id':'" + id + "','type':'File','uri':'" + uri + "','name':'" + name + "'}");
+    }
+
+    // Write a package with binaries given by path, through a binary store if
+    // indexed
+    private Path create_package(String name, List<JsonObject> objects, Map<String, String> binaries,
+            boolean indexed) throws IOException {
+        Path pkg = dir.resolve(name);
+        PackageUtil.initPackage(pkg);
+        PackageUtil.writeObjects(pkg, objects.stream());
+
+        if (indexed) {
+            try (BinaryStore store = BinaryStore.open(pkg)) {
+                for (Map.Entry<String, String> e : binaries.entrySet()) {
+                    store.write(e.getKey(), new ByteArrayInputStream(e.getValue().getBytes(StandardCharsets.UTF_8)),
+                            null, null);
+                }
+            }
+        } else {
+            for (Map.Entry<String, String> e : binaries.entrySet()) {
+                Path file = PackageUtil.getFile(pkg, e.getKey());
+                Files.createDirectories(file.getParent());
+                Files.writeString(file, e.getValue());
+            }
+        }
+
+        return pkg;
+    }
+
+    private static Set<JsonObject> read(Path file) throws IOException {
+        try (Stream<JsonObject> s = ObjectsReader.read(file, true)) {
+            return s.collect(Collectors.toSet());
+        }
+    }
+
+    private static Set<JsonObject> read_objects(Path pkg) throws IOException {
+        try (Stream<JsonObject> s = PackageUtil.readObjects(pkg)) {
+            return s.collect(Collectors.toSet());
+        }
+    }
+
+    private static Set<String> binaries(Path pkg) throws IOException {
+        Path files = PackageUtil.getFilesDir(pkg);
+
+        try (Stream<Path> s = Files.walk(files)) {
+            return s.filter(Files::isRegularFile).map(p -> "/" + files.relativize(p).toString())
+                    .collect(Collectors.toSet());
+        }
+    }
+
+    private void check_diff(boolean indexed) throws IOException {
+        List<JsonObject> old_objects = List.of(
+                parse("{'id':'user1','type':'User','firstName':'Ann','roles':['submitter']}"),
+                parse("{'id':'user2','type':'User','firstName':'Bob'}"),
+                parse("{'id':'journal1','type':'Journal','journalName':'J','issns':['1234-5678']}"),
+                file("file1", "/a/same.txt", "same"),
+                file("file2", "/a/content.txt", "content"),
+                file("file3", "/a/renamed.txt", "before"),
+                file("file4", "/a/deleted.txt", "deleted"));
+        List<JsonObject> new_objects = List.of(
+                parse("{'id':'journal1','type':'Journal','issns':['1234-5678'],'journalName':'J'}"),
+                parse("{'id':'user1','type':'User','firstName':'Amy','roles':['submitter']}"),
+                parse("{'id':'user3','type':'User','firstName':'Cy'}"),
+                file("file1", "/a/same.txt", "same"),
+                file("file2", "/a/content.txt", "content"),
+                file("file3", "/a/renamed.txt", "after"),
+                file("file5", "/b/added.txt", "added"));
+
+        Path old_pkg = create_package("old", old_objects,
+                Map.of("/a/same.txt", "same", "/a/content.txt", "old", "/a/renamed.txt", "r",
+                        "/a/deleted.txt", "d"),
+                indexed);
+        Path new_pkg = create_package("new", new_objects,
+                Map.of("/a/same.txt", "same", "/a/content.txt", "new", "/a/renamed.txt", "r",
+                        "/b/added.txt", "a"),
+                indexed);
+        Path delta = dir.resolve("delta");
+
+        PackageDiff.Summary summary = PackageDiff.write(old_pkg, new_pkg, delta, 1000);
+
+        assertEquals("Added: 2 Changed: 3 Deleted: 2 Unchanged: 2 Binaries: 2", summary.toString());
+
+        // Reordered keys of journal1 and file1 with the same binary are unchanged
+        assertEquals(Set.of(new_objects.get(1), new_objects.get(2), new_objects.get(4), new_objects.get(5),
+                new_objects.get(6)), read_objects(delta));
+        assertEquals(Set.of(parse("{'id':'user2','type':'User'}"), parse("{'id':'file4','type':'File'}")),
+                read(PackageDiff.getDeletedFile(delta)));
+
+        // The binary of file3 is the same so only its object is in the delta
+        assertEquals(Set.of("/a/content.txt", "/b/added.txt"), binaries(delta));
+        assertEquals("new", Files.readString(PackageUtil.getFile(delta, "/a/content.txt")));
+    }
+
+    @Test
+    public void testDiff() throws IOException {
+        check_diff(true);
+    }
+
+    // Without binary indexes the digests of the files are compared
+    @Test
+    public void testDiffWithoutBinaryIndex() throws IOException {
+        check_diff(false);
+
+        assertTrue(BinaryStore.readIndex(dir.resolve("old")).isEmpty());
+    }
+
+    @Test
+    public void testSame() throws IOException {
+        List<JsonObject> objects = List.of(parse("{'id':'user1','type':'User'}"), file("file1", "/a.txt", "a"));
+        Path old_pkg = create_package("old", objects, Map.of("/a.txt", "a"), true);
+        Path new_pkg = create_package("new", objects, Map.of("/a.txt", "a"), false);
+        Path delta = dir.resolve("delta");
+
+        assertEquals("Added: 0 Changed: 0 Deleted: 0 Unchanged: 2 Binaries: 0",
+                PackageDiff.write(old_pkg, new_pkg, delta, 1000).toString());
+        assertTrue(read_objects(delta).isEmpty());
+        assertTrue(read(PackageDiff.getDeletedFile(delta)).isEmpty());
+    }
+
+    // Runs of both packages are spilled and merged
+    @Test
+    public void testSpilled() throws IOException {
+        List<JsonObject> old_objects = new ArrayList<>();
+        List<JsonObject> new_objects = new ArrayList<>();
+
+        for (int i = 0; i < 300; i++) {
+            JsonObject o = parse("{'id':'user" + i + "','type':'User','firstName':'N" + i + "'}");
+
+            if (i % 3 != 0) {
+                old_objects.add(o);
+            }
+
+            if (i % 5 == 0) {
+                new_objects.add(parse("{'id':'user" + i + "','type':'User','firstName':'M" + i + "'}"));
+            } else if (i % 7 != 0) {
+                new_objects.add(o);
+            }
+        }
+
+        // Sorting must not depend on the order of the objects files
+        Collections.reverse(new_objects);
+
+        Path old_pkg = create_package("old", old_objects, Map.of(), false);
+        Path new_pkg = create_package("new", new_objects, Map.of(), false);
+        Path delta = dir.resolve("delta");
+
+        PackageDiff.Summary summary = PackageDiff.write(old_pkg, new_pkg, delta, 7);
+
+        Set<String> old_ids = old_objects.stream().map(o -> o.getString("id")).collect(Collectors.toSet());
+        Set<String> new_ids = new_objects.stream().map(o -> o.getString("id")).collect(Collectors.toSet());
+        Set<JsonObject> expected = new_objects.stream()
+                .filter(o -> !old_ids.contains(o.getString("id")) || !old_objects.contains(o))
+                .collect(Collectors.toSet());
+
+        assertEquals(expected, read_objects(delta));
+        assertEquals(old_ids.stream().filter(id -> !new_ids.contains(id)).count(), summary.deleted);
+        assertEquals(new_ids.stream().filter(id -> !old_ids.contains(id)).count(), summary.added);
+        assertEquals(expected.size(), summary.added + summary.changed);
+        assertEquals(new_objects.size() - expected.size(), summary.unchanged);
+
+        // The spilled runs are removed
+        try (Stream<Path> s = Files.list(dir)) {
+            assertEquals(Set.of("old", "new", "delta"),
+                    s.map(p -> p.getFileName().toString()).collect(Collectors.toSet()));
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package org.eclipse.pass.migration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PackageUtilTest {
+    @TempDir
+    Path dir;
+
+    private static JsonObject parse(String s) {
+        return Json.createReader(new StringReader(s.replace('\'', '"'))).readObject();
+    }
+
+    private static final List<JsonObject> objects = List.of(
+            parse("{'id':'sub1','type':'Submission','publication':'pub1','submitter':'user1'}"),
+            parse("{'id':'user1','type':'User','firstName':'Ann'}"),
+            parse("{'id':'pub1','type':'Publication','title':'T'}"),
+            parse("{'id':'user2','type':'User','firstName':'Bob'}"),
+            parse("{'id':'x1','type':'Unknown'}"));
+
+    @AfterEach
+    public void clearProperties() {
+        System.clearProperty("package.partition");
+        System.clearProperty("package.gzip");
+    }
+
+    private Path create_package() throws IOException {
+        Path pkg = dir.resolve("package");
+        PackageUtil.initPackage(pkg);
+        PackageUtil.writeObjects(pkg, objects.stream());
+
+        return pkg;
+    }
+
+    private static List<JsonObject> read_objects(Path pkg) throws IOException {
+        try (Stream<JsonObject> s = PackageUtil.readObjects(pkg)) {
+            return s.collect(Collectors.toList());
+        }
+    }
+
+    private static List<JsonObject> read_type(Path pkg, String type) throws IOException {
+        try (Stream<JsonObject> s = PackageUtil.readObjectsOfType(pkg, type)) {
+            return s.collect(Collectors.toList());
+        }
+    }
+
+    private static List<String> file_names(Path pkg) throws IOException {
+        return PackageUtil.getTypeObjectsFiles(pkg).stream().map(f -> f.getFileName().toString())
+                .collect(Collectors.toList());
+    }
+
+    // Objects of each type in import order, then unknown types
+    private static final List<JsonObject> partitioned = List.of(objects.get(1), objects.get(3), objects.get(2),
+            objects.get(0), objects.get(4));
+
+    private static void check_partitioned(Path pkg) throws IOException {
+        assertTrue(PackageUtil.isPartitioned(pkg));
+        assertTrue(PackageUtil.hasObjects(pkg));
+        assertFalse(Files.exists(PackageUtil.getObjectsFile(pkg)));
+        assertFalse(Files.exists(PackageUtil.getCompressedObjectsFile(pkg)));
+        assertFalse(Files.exists(ObjectsIndex.getFile(pkg)));
+        assertEquals(List.of("objects-User.ndjson", "objects-Publication.ndjson", "objects-Submission.ndjson",
+                "objects-Unknown.ndjson"), file_names(pkg));
+
+        assertEquals(partitioned, read_objects(pkg));
+        assertEquals(List.of(objects.get(1), objects.get(3)), read_type(pkg, "User"));
+        assertEquals(List.of(objects.get(0)), read_type(pkg, "Submission"));
+        assertEquals(List.of(), read_type(pkg, "Deposit"));
+        assertNull(PackageUtil.getObjectsIndex(pkg));
+        assertEquals(objects.get(2), PackageUtil.readObject(pkg, "pub1"));
+
+        try (Stream<JsonObject> s = PackageUtil.readObjectsUnordered(pkg)) {
+            assertEquals(objects.size(), s.count());
+        }
+    }
+
+    @Test
+    public void testPartitionObjects() throws IOException {
+        Path pkg = create_package();
+
+        assertFalse(PackageUtil.isPartitioned(pkg));
+        assertEquals(objects.size(), PackageUtil.partitionObjects(pkg));
+        check_partitioned(pkg);
+
+        // Nothing is done a second time
+        assertEquals(0, PackageUtil.partitionObjects(pkg));
+        check_partitioned(pkg);
+    }
+
+    @Test
+    public void testPartitionCompressedObjects() throws IOException {
+        System.setProperty("package.gzip", "true");
+        Path pkg = create_package();
+        System.clearProperty("package.gzip");
+
+        assertTrue(Files.exists(PackageUtil.getCompressedObjectsFile(pkg)));
+        assertEquals(objects.size(), PackageUtil.partitionObjects(pkg));
+        check_partitioned(pkg);
+    }
+
+    // Writing a partitioned package removes the files of types no longer
+    // present, and writing a single objects file removes the files per type
+    @Test
+    public void testWritePartitioned() throws IOException {
+        System.setProperty("package.partition", "true");
+        Path pkg = create_package();
+        check_partitioned(pkg);
+
+        PackageUtil.writeObjects(pkg, Stream.of(objects.get(1), objects.get(2)));
+
+        assertEquals(List.of("objects-User.ndjson", "objects-Publication.ndjson"), file_names(pkg));
+
+        System.clearProperty("package.partition");
+        PackageUtil.writeObjects(pkg, objects.stream());
+
+        assertFalse(PackageUtil.isPartitioned(pkg));
+        assertEquals(List.of(), file_names(pkg));
+        assertEquals(objects, read_objects(pkg));
+    }
+
+    // A single objects file is used if a package has both layouts
+    @Test
+    public void testSingleFileFirst() throws IOException {
+        Path pkg = create_package();
+        Files.writeString(PackageUtil.getTypeObjectsFile(pkg, "User"), objects.get(1).toString() + "\n");
+
+        assertFalse(PackageUtil.isPartitioned(pkg));
+        assertEquals(objects, read_objects(pkg));
+        assertEquals(List.of(objects.get(1), objects.get(3)), read_type(pkg, "User"));
+    }
+}
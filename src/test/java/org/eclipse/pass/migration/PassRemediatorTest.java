@@ -0,0 +1,165 @@
+package org.eclipse.pass.migration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PassRemediatorTest {
+    @TempDir
+    Path dir;
+
+    private Path create_package(List<JsonObject> objects) throws IOException {
+        return TestPackages.create(dir.resolve("input"), objects.stream());
+    }
+
+    private static JsonObject submission(String id) {
+        return Json.createObjectBuilder().add("id", id).add("type", "Submission").add("source", "other")
+                .add("publication", "pub1").add("submitter", "user1").build();
+    }
+
+    // The deposit refers to the second submission before either is loaded, so
+    // the id of the second is seen first. The two have JSON of the same length.
+    @Test
+    public void testDuplicateTieKeepsFirstLoaded() throws IOException {
+        JsonObject deposit = Json.createObjectBuilder().add("id", "deposit1").add("type", "Deposit")
+                .add("submission", "sub1b").build();
+
+        PassRemediator pr = new PassRemediator(
+                create_package(List.of(deposit, submission("sub1a"), submission("sub1b"))));
+
+        assertEquals(List.of(List.of("sub1a", "sub1b")), List.copyOf(pr.getDuplicateSets()));
+
+        pr.run();
+
+        Map<String, JsonObject> objects = pr.getObjects();
+
+        assertEquals(2, objects.size());
+        assertFalse(objects.containsKey("sub1b"));
+        assertEquals("sub1a", objects.get("deposit1").getString("submission"));
+    }
+
+    private static JsonObject publication(int i, String title, String doi, String pmid) {
+        return Json.createObjectBuilder().add("id", "publication" + i).add("type", "Publication").add("title", title)
+                .add("doi", doi).add("pmid", pmid).build();
+    }
+
+    private static List<String> publication_keys(JsonObject o) {
+        List<String> keys = new ArrayList<>();
+
+        for (String prop : List.of("title", "doi", "pmid")) {
+            if (!o.getString(prop).isEmpty()) {
+                keys.add("Publication," + o.getString(prop));
+            }
+        }
+
+        return keys;
+    }
+
+    // Duplicate sets as found before union-find, only following keys one step
+    // from the objects with each key, so a chain may be split across sets
+    private static List<Set<String>> legacy_duplicate_sets(List<JsonObject> objects) {
+        Map<String, List<JsonObject>> key_map = new HashMap<>();
+
+        objects.forEach(o -> {
+            publication_keys(o).forEach(key -> key_map.computeIfAbsent(key, k -> new ArrayList<>()).add(o));
+        });
+
+        key_map.entrySet().removeIf((e) -> e.getValue().size() == 1);
+
+        List<Set<String>> result = new ArrayList<>();
+        Set<String> keys = key_map.keySet();
+
+        while (!keys.isEmpty()) {
+            String key = keys.iterator().next();
+            Set<String> dupes = new HashSet<>();
+
+            key_map.get(key).forEach(o -> {
+                publication_keys(o).forEach(k -> {
+                    List<JsonObject> key_dupes = key_map.get(k);
+
+                    if (key_dupes != null) {
+                        key_dupes.stream().map(ko -> ko.getString("id")).forEach(dupes::add);
+                        keys.remove(k);
+                    }
+                });
+            });
+
+            result.add(dupes);
+        }
+
+        return result;
+    }
+
+    // Join sets which share an object
+    private static Set<Set<String>> merge(List<Set<String>> sets) {
+        List<Set<String>> result = new ArrayList<>();
+
+        for (Set<String> set : sets) {
+            Set<String> merged = new HashSet<>(set);
+
+            result.removeIf(other -> {
+                if (other.stream().anyMatch(set::contains)) {
+                    merged.addAll(other);
+                    return true;
+                }
+
+                return false;
+            });
+
+            result.add(merged);
+        }
+
+        return new HashSet<>(result);
+    }
+
+    @Test
+    public void testDuplicateSetsMatchLegacy() throws IOException {
+        List<JsonObject> pubs = new ArrayList<>();
+
+        // Unrelated, duplicates sharing several keys, and chains linked by
+        // doi, then pmid, then title
+        for (int i = 0; i < 200; i += 10) {
+            pubs.add(publication(i, "Title " + i, "10.1/" + i, "" + i));
+            pubs.add(publication(i + 1, "Title " + i, "10.1/" + i, ""));
+            pubs.add(publication(i + 2, "Title " + (i + 2), "10.1/" + (i + 2), ""));
+            pubs.add(publication(i + 3, "Title " + (i + 3), "10.1/" + (i + 2), "" + (i + 3)));
+            pubs.add(publication(i + 4, "Title " + (i + 4), "10.1/" + (i + 4), "" + (i + 3)));
+            pubs.add(publication(i + 5, "Title " + (i + 4), "10.1/" + (i + 5), "" + (i + 5)));
+            pubs.add(publication(i + 6, "Title " + (i + 6), "10.1/" + (i + 6), "" + (i + 6)));
+        }
+
+        Set<Set<String>> expected = merge(legacy_duplicate_sets(pubs));
+
+        assertEquals(40, expected.size());
+
+        PassRemediator pr = new PassRemediator(create_package(pubs));
+
+        assertEquals(expected, pr.getDuplicateSets().stream().map(HashSet::new).collect(Collectors.toSet()));
+
+        pr.run();
+
+        Set<String> kept = pr.getObjects().keySet();
+
+        // One kept of each set and every object in no set kept
+        expected.forEach(set -> assertEquals(1, set.stream().filter(kept::contains).count()));
+        pubs.stream().map(o -> o.getString("id")).filter(id -> expected.stream().noneMatch(set -> set.contains(id)))
+                .forEach(id -> assertTrue(kept.contains(id)));
+        assertEquals(60, kept.size());
+    }
+}
@@ -0,0 +1,85 @@
+package org.eclipse.pass.migration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+public class RelationIndexTest {
+    // Source and name of each relation with the target as "source:name"
+    private static List<String> relations(RelationIndex index, int target) {
+        List<String> result = new ArrayList<>();
+        index.forEach(target, (source, name) -> result.add(source + ":" + name));
+        return result;
+    }
+
+    private static RelationIndex build() {
+        RelationIndex.Builder builder = new RelationIndex.Builder();
+
+        builder.add(0, 10, 2);
+        builder.add(1, 10, 2);
+        builder.add(1, 11, 3);
+        builder.add(0, 11, 2);
+
+        return builder.build(5);
+    }
+
+    @Test
+    public void testBuild() {
+        RelationIndex index = build();
+
+        assertEquals(List.of(), relations(index, 0));
+        assertEquals(List.of("0:10", "1:10", "0:11"), relations(index, 2));
+        assertEquals(List.of("1:11"), relations(index, 3));
+        assertEquals(List.of(2, 3), index.targets().boxed().collect(Collectors.toList()));
+        assertFalse(index.isTarget(4));
+    }
+
+    // Relations may be added with targets beyond the size the index was built with
+    @Test
+    public void testAppend() {
+        RelationIndex index = build();
+
+        index.add(4, 12, 2);
+        index.add(4, 12, 0);
+        index.add(3, 10, 7);
+
+        for (int i = 0; i < 20; i++) {
+            index.add(i, 13, 100);
+        }
+
+        assertEquals(List.of("0:10", "1:10", "0:11", "4:12"), relations(index, 2));
+        assertEquals(List.of("4:12"), relations(index, 0));
+        assertEquals(List.of("3:10"), relations(index, 7));
+        assertEquals(20, relations(index, 100).size());
+        assertEquals(List.of(), relations(index, 99));
+        assertEquals(List.of(0, 2, 3, 7, 100), index.targets().boxed().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testRemove() {
+        RelationIndex index = build();
+
+        index.add(4, 12, 2);
+        index.add(5, 12, 2);
+
+        assertTrue(index.remove(1, 10, 2));
+        assertTrue(index.remove(4, 12, 2));
+        assertFalse(index.remove(4, 12, 2));
+        assertFalse(index.remove(1, 11, 2));
+        assertFalse(index.remove(0, 10, 9));
+        assertEquals(List.of("0:10", "0:11", "5:12"), relations(index, 2));
+
+        assertTrue(index.remove(1, 11, 3));
+        assertFalse(index.isTarget(3));
+
+        index.add(1, 11, 3);
+        assertTrue(index.isTarget(3));
+        assertEquals(List.of("1:11"), relations(index, 3));
+    }
+}
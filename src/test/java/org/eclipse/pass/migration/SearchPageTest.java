@@ -0,0 +1,88 @@
+package org.eclipse.pass.migration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.StringReader;
+import java.util.List;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.Test;
+
+public class SearchPageTest {
+    private static final String FCREPO_BASE_URL = "http://localhost:8080/fcrepo/";
+
+    private static String json(String s) {
+        return s.replace('\'', '"');
+    }
+
+    private static JsonObject parse(String s) {
+        return Json.createReader(new StringReader(json(s))).readObject();
+    }
+
+    private static SearchPage search(String response) {
+        return SearchPage.parse(new StringReader(json(response)), FCREPO_BASE_URL);
+    }
+
+    // A response with fields which are not used, including nested objects and
+    // arrays around and inside the hits
+    private static final String RESPONSE = "{'took':5,'timed_out':false,"
+            + "'_shards':{'total':1,'failures':[{'reason':{'type':'x','nested':[[1,2],{'a':[]}]}}]},"
+            + "'hits':{'max_score':null,'extra':[[{'a':{'b':[1]}}],[]],'total':12,'hits':["
+            + "{'_index':'pass','_id':'j1','_score':null,'_explanation':{'details':[{'value':1}]},"
+            + "'_source':{'@id':'journal1','@type':'Journal','journalName':'J\\u00e9 \\\"q\\\"',"
+            + "'journalName_suggest':{'input':['J',['K']],'weight':{'w':[{}]}},'issns':['Print:1234-5678'],"
+            + "'pmcParticipation':null,'flags':[true,false,null],'size':1.50,'count':-7,"
+            + "'nested':{'list':[{'a':1},[2,[3]],{}]},'empty':{}},"
+            + "'sort':[1700000000000,'journal1']},"
+            + "{'_id':'f1','_source':{'@id':'file1','@type':'File','name':'a.pdf',"
+            + "'uri':'https://old.example.org/fcrepo/rest/files/ab/a%20b.pdf','submission':'sub1'},"
+            + "'highlight':{'name':['<em>a</em>']},'sort':[1700000000001,'file1']}]},"
+            + "'aggregations':{'types':{'buckets':[{'key':'File','doc_count':1}]}},'warnings':[[[]],{}]}";
+
+    @Test
+    public void testParse() {
+        SearchPage page = search(RESPONSE);
+
+        assertEquals(12, page.getTotal());
+        assertEquals(2, page.getHits().size());
+        assertEquals(Json.createArrayBuilder().add(1700000000001L).add("file1").build(), page.getLastSort());
+
+        SearchPage.Hit journal = page.getHits().get(0);
+
+        assertEquals(parse("{'id':'journal1','type':'Journal','journalName':'J\\u00e9 \\\"q\\\"',"
+                + "'issns':['Print:1234-5678'],'pmcParticipation':null,'flags':[true,false,null],'size':1.50,"
+                + "'count':-7,'nested':{'list':[{'a':1},[2,[3]],{}]},'empty':{}}"), parse(journal.json));
+        assertEquals(-1, journal.json.indexOf('\n'));
+        assertNull(journal.binaryUrl);
+        assertNull(journal.binaryPath);
+
+        SearchPage.Hit file = page.getHits().get(1);
+
+        assertEquals(FCREPO_BASE_URL + "rest/files/ab/a%20b.pdf", file.binaryUrl);
+        assertEquals("/fcrepo/rest/files/ab/a b.pdf", file.binaryPath);
+        assertEquals(parse("{'id':'file1','type':'File','name':'a.pdf','uri':'/fcrepo/rest/files/ab/a b.pdf',"
+                + "'submission':'sub1'}"), parse(file.json));
+    }
+
+    @Test
+    public void testEmptyPage() {
+        SearchPage page = search("{'hits':{'total':3,'hits':[]},'took':1}");
+
+        assertEquals(3, page.getTotal());
+        assertEquals(List.of(), page.getHits());
+        assertNull(page.getLastSort());
+    }
+
+    @Test
+    public void testInvalidResponse() {
+        assertThrows(RuntimeException.class, () -> search("{'took':1,'hits':{'hits':[]}}"));
+        assertThrows(RuntimeException.class, () -> search("{'hits':{'total':1,'hits':[{'_id':'x'}]}}"));
+        assertThrows(RuntimeException.class, () -> search("{'hits':{'total':1,'hits':[{'_source':"
+                + "{'@id':'f','@type':'File','uri':'http://example.org/files/a.pdf'}}]}}"));
+        assertThrows(RuntimeException.class, () -> search("[]"));
+    }
+}
@@ -0,0 +1,25 @@
+package org.eclipse.pass.migration;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import javax.json.JsonObject;
+
+// Packages written the way an export writes them, one object per line
+final class TestPackages {
+    private TestPackages() {
+    }
+
+    static Path create(Path pkg, Stream<JsonObject> objects) throws IOException {
+        PackageUtil.initPackage(pkg);
+
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(PackageUtil.getObjectsFile(pkg)))) {
+            objects.forEach(o -> out.println(o.toString()));
+        }
+
+        return pkg;
+    }
+}
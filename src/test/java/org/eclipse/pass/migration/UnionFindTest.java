@@ -0,0 +1,61 @@
+package org.eclipse.pass.migration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class UnionFindTest {
+    @Test
+    public void testUnion() {
+        UnionFind sets = new UnionFind(6);
+
+        for (int i = 0; i < 6; i++) {
+            assertEquals(i, sets.find(i));
+            assertEquals(1, sets.size(i));
+        }
+
+        sets.union(0, 1);
+        sets.union(2, 3);
+        sets.union(3, 4);
+
+        assertEquals(sets.find(0), sets.find(1));
+        assertEquals(sets.find(2), sets.find(4));
+        assertNotEquals(sets.find(0), sets.find(2));
+        assertEquals(2, sets.size(1));
+        assertEquals(3, sets.size(3));
+        assertEquals(1, sets.size(5));
+
+        // Already joined
+        sets.union(4, 2);
+        assertEquals(3, sets.size(2));
+
+        sets.union(1, 4);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(sets.find(0), sets.find(i));
+            assertEquals(5, sets.size(i));
+        }
+
+        assertEquals(5, sets.find(5));
+    }
+
+    // A long chain joined one element at a time ends up as one set
+    @Test
+    public void testChain() {
+        int count = 100000;
+        UnionFind sets = new UnionFind(count);
+
+        for (int i = 1; i < count; i++) {
+            sets.union(i - 1, i);
+        }
+
+        int root = sets.find(0);
+
+        for (int i = 0; i < count; i++) {
+            assertEquals(root, sets.find(i));
+        }
+
+        assertEquals(count, sets.size(count - 1));
+    }
+}
@@ -0,0 +1,71 @@
+package org.eclipse.pass.migration;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.IntStream;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Compares writing the objects of a remediated package with the old
+// toString and regex approach to PassRemediator.writePackage. The number of
+// objects and rounds can be raised to time the two, for example:
+// mvn test -Dtest=WritePackageTest -Dbenchmark.objects=200000 -Dbenchmark.rounds=5
+public class WritePackageTest {
+    @TempDir
+    Path dir;
+
+    private static JsonObject journal(int i) {
+        return Json.createObjectBuilder().add("id", "journal" + i).add("type", "Journal")
+                .add("journalName", "Journal of \"Things\" number " + i + " \u00e9\u4e2d")
+                .add("issns", Json.createArrayBuilder().add("Print:1234-" + i).add("Online:5678-" + i))
+                .add("nlmta", "J Things " + i).build();
+    }
+
+    private static void write_legacy(Path output, PassRemediator pr) throws IOException {
+        try (PrintWriter out = new PrintWriter(
+                Files.newBufferedWriter(PackageUtil.getObjectsFile(output), StandardCharsets.UTF_8))) {
+            pr.getObjects().values().stream().map(o -> o.toString().replaceAll("\r|\n", ""))
+                    .forEach(out::println);
+        }
+    }
+
+    @Test
+    public void testWritePackage() throws IOException {
+        int count = Integer.getInteger("benchmark.objects", 20000);
+        int rounds = Integer.getInteger("benchmark.rounds", 1);
+        PassRemediator pr = new PassRemediator(TestPackages.create(dir.resolve("input"),
+                IntStream.range(0, count).mapToObj(WritePackageTest::journal)));
+
+        Path legacy_output = dir.resolve("legacy");
+        Path output = dir.resolve("output");
+        PackageUtil.initPackage(legacy_output);
+
+        long legacy_ms = Long.MAX_VALUE;
+        long write_ms = Long.MAX_VALUE;
+
+        for (int i = 0; i < rounds; i++) {
+            long start = System.currentTimeMillis();
+            write_legacy(legacy_output, pr);
+            legacy_ms = Math.min(legacy_ms, System.currentTimeMillis() - start);
+
+            start = System.currentTimeMillis();
+            pr.writePackage(output);
+            write_ms = Math.min(write_ms, System.currentTimeMillis() - start);
+        }
+
+        assertArrayEquals(Files.readAllBytes(PackageUtil.getObjectsFile(legacy_output)),
+                Files.readAllBytes(PackageUtil.getObjectsFile(output)));
+
+        System.err.println("Objects: " + count + ", best of " + rounds + " rounds. toString and regex: " + legacy_ms
+                + " ms, writePackage including index: " + write_ms + " ms");
+    }
+}